@@ -0,0 +1,32 @@
+/**
+ * Elements held in a plain heap array.
+ */
+class ArrayStorage extends Storage {
+
+    private final long[] elements;
+
+    public ArrayStorage(long[] elements) {
+        super(elements.length);
+        this.elements = elements;
+    }
+
+    @Override
+    public long get(long index) {
+        return this.elements[(int) index];
+    }
+
+    @Override
+    public void read(long from, long[] dst, int offset, int count) {
+        System.arraycopy(this.elements, (int) from, dst, offset, count);
+    }
+
+    @Override
+    public void write(long from, long[] src, int offset, int count) {
+        System.arraycopy(src, offset, this.elements, (int) from, count);
+    }
+
+    @Override
+    public long[] array() {
+        return this.elements;
+    }
+}
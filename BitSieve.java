@@ -0,0 +1,67 @@
+import java.nio.LongBuffer;
+
+/**
+ * Compact sieve storage, one bit per odd number packed into long words.
+ * Even numbers are never stored, callers answer those on their own.
+ */
+class BitSieve {
+
+    // each word covers 64 odd numbers, i.e. 128 consecutive values
+    public static final int valuesPerWord = 128;
+
+    private final LongBuffer words;
+    private final long limit;
+
+    /**
+     * Constructs a sieve covering every odd number up to and including limit
+     */
+    public BitSieve(long limit) {
+        this(limit, LongBuffer.wrap(new long[BitSieve.wordCount(limit)]));
+    }
+
+    /**
+     * Constructs a sieve over existing words, e.g. a read only mapped cache file
+     */
+    public BitSieve(long limit, LongBuffer words) {
+        this.limit = limit;
+        this.words = words;
+    }
+
+    /**
+     * Returns how many words are needed to cover limit
+     */
+    public static int wordCount(long limit) {
+        return (int) (limit / valuesPerWord) + 1;
+    }
+
+    /**
+     * Returns the flag for the odd number
+     */
+    public boolean get(long odd) {
+        long bit = odd >>> 1;
+        return (this.words.get((int) (bit >>> 6)) & (1L << bit)) != 0;
+    }
+
+    /**
+     * Sets the flag for the odd number
+     */
+    public void set(long odd) {
+        long bit = odd >>> 1;
+        int index = (int) (bit >>> 6);
+        this.words.put(index, this.words.get(index) | (1L << bit));
+    }
+
+    /**
+     * Returns the largest number covered by the sieve
+     */
+    public long getLimit() {
+        return this.limit;
+    }
+
+    /**
+     * Returns the backing words
+     */
+    public LongBuffer getWords() {
+        return this.words;
+    }
+}
@@ -0,0 +1,178 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * On disk copies of the prime, pq and abundant caches. A cache is written once
+ * after it is built, later processes map it read only so start up is nearly free
+ * and every process shares the same pages through the OS page cache.
+ *
+ * File layout, everything in native byte order:
+ *   int magic, int version, int kind, int reserved, long limit, long word count,
+ *   followed by the words themselves.
+ */
+class CacheStore {
+
+    public static final int magic = 0x56454348;
+    // bump whenever the meaning of the words changes
+    public static final int version = 1;
+
+    public static final int kindPrime = 1;
+    public static final int kindPQ = 2;
+    public static final int kindAbundant = 3;
+
+    private static final int headerSize = 32;
+    private static final String[] fileNames = { "", "prime.cache", "pq.cache", "abundant.cache" };
+
+    private static Path directory = null;
+
+    /**
+     * A cache read back from disk
+     */
+    static class Mapped {
+        final long limit;
+        final LongBuffer words;
+
+        Mapped(long limit, LongBuffer words) {
+            this.limit = limit;
+            this.words = words;
+        }
+    }
+
+    /**
+     * Enables the on disk caches in the given directory, creating it when needed
+     */
+    public static boolean setDirectory(String path) {
+        try {
+            CacheStore.directory = Files.createDirectories(Paths.get(path));
+        } catch (IOException | InvalidPathException e) {
+            CacheStore.directory = null;
+        }
+
+        return CacheStore.directory != null;
+    }
+
+    /**
+     * Returns whether a cache directory was configured
+     */
+    public static boolean isEnabled() {
+        return CacheStore.directory != null;
+    }
+
+    /**
+     * Maps the cache file of the given kind, returns null when there is no usable file
+     */
+    public static Mapped load(int kind) {
+        if (CacheStore.directory == null) {
+            return null;
+        }
+
+        Path file = CacheStore.directory.resolve(fileNames[kind]);
+
+        if (! Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < headerSize) {
+                return null;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.nativeOrder());
+            channel.read(header, 0);
+            header.flip();
+
+            // a file from another version or another byte order is simply rebuilt
+            if (header.getInt() != magic || header.getInt() != version || header.getInt() != kind) {
+                return null;
+            }
+
+            header.getInt();
+            long limit = header.getLong();
+            long count = header.getLong();
+
+            if (count < 0 || count > Integer.MAX_VALUE || channel.size() != headerSize + (count * Long.BYTES)) {
+                return null;
+            }
+
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, headerSize, count * Long.BYTES);
+
+            return new Mapped(limit, data.order(ByteOrder.nativeOrder()).asLongBuffer());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the cache words to disk, silently gives up if the directory is not writable
+     */
+    public static void save(int kind, long limit, LongBuffer words) {
+        if (CacheStore.directory == null) {
+            return;
+        }
+
+        Path file = CacheStore.directory.resolve(fileNames[kind]);
+        Path temp;
+        int count = words.limit();
+
+        // a temp file of its own, processes building the same cache never write into each other's
+        try {
+            temp = Files.createTempFile(CacheStore.directory, fileNames[kind] + ".", ".tmp");
+        } catch (IOException e) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+
+            ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.nativeOrder());
+            header.putInt(magic).putInt(version).putInt(kind).putInt(0).putLong(limit).putLong(count);
+            header.flip();
+            channel.write(header);
+
+            // stream the words through a modest buffer rather than one giant copy
+            ByteBuffer chunk = ByteBuffer.allocateDirect(1024 * 1024).order(ByteOrder.nativeOrder());
+            LongBuffer view = chunk.asLongBuffer();
+
+            for (int i = 0; i < count; ) {
+                int n = Math.min(view.capacity(), count - i);
+
+                view.clear();
+                view.put(words.duplicate().position(i).limit(i + n));
+
+                chunk.clear().limit(n * Long.BYTES);
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk);
+                }
+
+                i += n;
+            }
+        } catch (IOException e) {
+            CacheStore.delete(temp);
+            return;
+        }
+
+        // readers only ever see a complete file
+        try {
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                // the file is complete by now, a reader racing the plain move is the lesser evil
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            CacheStore.delete(temp);
+        }
+    }
+
+    private static void delete(Path temp) {
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Elements held on the heap in fixed size arrays, element i lives in chunk
+ * i / chunkSize at i % chunkSize. No single allocation has to be as big as
+ * the vector, and the vector can be longer than any one array.
+ */
+class ChunkedStorage extends Storage {
+
+    // 2^24 elements, 128MB per chunk
+    private static final int chunkShift = 24;
+    public static final int chunkSize = 1 << chunkShift;
+    private static final int chunkMask = chunkSize - 1;
+
+    private final long[][] chunks;
+
+    public ChunkedStorage(long length) {
+        super(length);
+
+        int count = (int) ((length + chunkSize - 1) >>> chunkShift);
+
+        this.chunks = new long[count][];
+
+        for (int c = 0; c < count; c++) {
+            this.chunks[c] = new long[(int) Math.min(chunkSize, length - ((long) c << chunkShift))];
+        }
+    }
+
+    @Override
+    public long get(long index) {
+        return this.chunks[(int) (index >>> chunkShift)][(int) index & chunkMask];
+    }
+
+    @Override
+    public void read(long from, long[] dst, int offset, int count) {
+        while (count > 0) {
+            int start = (int) from & chunkMask;
+            int n = Math.min(count, chunkSize - start);
+
+            System.arraycopy(this.chunks[(int) (from >>> chunkShift)], start, dst, offset, n);
+
+            from += n;
+            offset += n;
+            count -= n;
+        }
+    }
+
+    @Override
+    public void write(long from, long[] src, int offset, int count) {
+        while (count > 0) {
+            int start = (int) from & chunkMask;
+            int n = Math.min(count, chunkSize - start);
+
+            System.arraycopy(src, offset, this.chunks[(int) (from >>> chunkShift)], start, n);
+
+            from += n;
+            offset += n;
+            count -= n;
+        }
+    }
+
+    @Override
+    public long[][] chunks() {
+        return this.chunks;
+    }
+}
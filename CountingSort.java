@@ -0,0 +1,192 @@
+/**
+ * Sorts elements lying in a narrow window of values by counting them, and
+ * learns their sum, mode, median and distinct count on the way. Works for
+ * any window, negative values included, as long as it is not much wider
+ * than the number of elements.
+ *
+ * Narrow windows are counted concurrently, every piece into counts of its
+ * own that are added up afterwards, wider ones into a single array. The
+ * sorted runs are written out concurrently, each piece of the output
+ * finding its first value by binary search.
+ */
+final class CountingSort {
+
+    // counts kept for windows of at most this many values
+    private static final int maxWindow = 20 * 1000 * 1000;
+    // any window this narrow is worth it however few elements there are
+    private static final int minWindow = 4096;
+    // windows up to this many values are counted per piece
+    private static final int pieceWindow = 1 << 16;
+    // elements per block when storage is read out or written
+    private static final int readBlock = 4096;
+
+    /**
+     * What counting the elements learned about them
+     */
+    static final class Result {
+        final long sum;
+        // -1 when two or more values share the highest count
+        final long mode;
+        // the upper median
+        final long median;
+        final long minimum;
+        final long maximum;
+        final long distinct;
+
+        Result(long sum, long mode, long median, long minimum, long maximum, long distinct) {
+            this.sum = sum;
+            this.mode = mode;
+            this.median = median;
+            this.minimum = minimum;
+            this.maximum = maximum;
+            this.distinct = distinct;
+        }
+    }
+
+    private CountingSort() {
+    }
+
+    /**
+     * Returns whether length elements in [minimum, maximum] are worth sorting by counting
+     */
+    public static boolean fits(long length, long minimum, long maximum) {
+        long window = maximum - minimum;
+
+        return minimum <= maximum && window >= 0 && window < maxWindow && window < Math.max(length, minWindow);
+    }
+
+    /**
+     * Writes the elements of in to out in ascending order, given they all
+     * lie in [minimum, maximum] as checked by fits. Returns null, with out
+     * left incomplete, when some do not.
+     */
+    public static Result sort(Storage in, Storage out, long minimum, long maximum) {
+        final long length = in.length();
+        final int window = (int) (maximum - minimum) + 1;
+
+        // the slot past the window counts the elements outside it
+        long[] counts;
+
+        if (window <= pieceWindow) {
+            counts = Kernels.collect(in, () -> new long[window + 1],
+                    (partial, elements, from, to) -> CountingSort.count(partial, elements, from, to, minimum),
+                    (left, right) -> {
+                        for (int v = 0; v <= window; v++) {
+                            left[v] += right[v];
+                        }
+                        return left;
+                    });
+        } else {
+            counts = new long[window + 1];
+            long[] block = new long[(int) Math.min(length, readBlock)];
+
+            for (long from = 0; from < length; from += block.length) {
+                int count = (int) Math.min(block.length, length - from);
+
+                in.read(from, block, 0, count);
+                CountingSort.count(counts, block, 0, count, minimum);
+            }
+        }
+
+        if (counts[window] != 0) {
+            return null;
+        }
+
+        // where the run of every value starts, and all the by-products
+        final long[] starts = new long[window];
+        long position = 0;
+        long sum = 0;
+        long best = 0;
+        long mode = -1;
+        long median = 0;
+        long distinct = 0;
+        int lowest = -1;
+        int highest = -1;
+
+        for (int v = 0; v < window; v++) {
+            long count = counts[v];
+            long value = minimum + v;
+
+            starts[v] = position;
+
+            if (count == 0) {
+                continue;
+            }
+
+            if (position <= length / 2 && length / 2 < position + count) {
+                median = value;
+            }
+
+            // a count as high as the highest one so far means there is no mode
+            if (count > best) {
+                best = count;
+                mode = value;
+            } else if (count == best) {
+                mode = -1;
+            }
+
+            sum += count * value;
+            distinct++;
+            lowest = (lowest < 0) ? v : lowest;
+            highest = v;
+            position += count;
+        }
+
+        Kernels.forEach(length, (from, count) -> {
+            long[] block = new long[Math.min(readBlock, count)];
+            int v = CountingSort.runAt(starts, from);
+            long end = from + count;
+            int filled = 0;
+            long written = from;
+
+            for (long i = from; i < end; i++) {
+                while (v + 1 < starts.length && starts[v + 1] <= i) {
+                    v++;
+                }
+
+                block[filled++] = minimum + v;
+
+                if (filled == block.length) {
+                    out.write(written, block, 0, filled);
+                    written += filled;
+                    filled = 0;
+                }
+            }
+
+            out.write(written, block, 0, filled);
+        });
+
+        return new Result(sum, mode, median, minimum + lowest, minimum + highest, distinct);
+    }
+
+    private static void count(long[] counts, long[] elements, int from, int to, long minimum) {
+        int window = counts.length - 1;
+
+        for (int i = from; i < to; i++) {
+            long offset = elements[i] - minimum;
+
+            // read unsigned, values below the window land far above it
+            counts[(Long.compareUnsigned(offset, window) < 0) ? (int) offset : window]++;
+        }
+    }
+
+    /**
+     * Returns the value whose run holds position, the last with a start not past it
+     */
+    private static int runAt(long[] starts, long position) {
+        int low = 0;
+        int high = starts.length - 1;
+
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+
+            if (starts[middle] <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return low;
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Elements of an element wise operation that has not been carried out yet,
+ * either a scalar or a second operand applied to every element of the first.
+ *
+ * Operands may be expressions themselves, so a chain of operations forms a
+ * tree. Reading it evaluates the whole tree one small block at a time, the
+ * block stays in cache while every operation is applied to it and none of
+ * the intermediate results is ever written out as a full array.
+ */
+class ExpressionStorage extends Storage {
+
+    public static final int add = 0;
+    public static final int multiply = 1;
+
+    // small enough that a block and its operand stay in L1
+    private static final int blockSize = 1024;
+
+    private final int operation;
+    private final Storage left;
+    // null when the scalar is applied instead
+    private final Storage right;
+    private final long scalar;
+
+    /**
+     * Applies the scalar to every element of left
+     */
+    public ExpressionStorage(int operation, Storage left, long scalar) {
+        this(operation, left, null, scalar);
+    }
+
+    /**
+     * Applies right to left element by element
+     */
+    public ExpressionStorage(int operation, Storage left, Storage right) {
+        this(operation, left, right, 0);
+    }
+
+    private ExpressionStorage(int operation, Storage left, Storage right, long scalar) {
+        super(left.length());
+        this.operation = operation;
+        this.left = left;
+        this.right = right;
+        this.scalar = scalar;
+    }
+
+    @Override
+    public Storage share() {
+        // every reader of the expression also reads its operands
+        this.left.share();
+        if (this.right != null) {
+            this.right.share();
+        }
+
+        return this;
+    }
+
+    @Override
+    public void release() {
+        this.left.release();
+        if (this.right != null) {
+            this.right.release();
+        }
+    }
+
+    @Override
+    public boolean isDeferred() {
+        return true;
+    }
+
+    @Override
+    public long get(long index) {
+        long value = this.left.get(index);
+        long operand = (this.right != null) ? this.right.get(index) : this.scalar;
+
+        return (this.operation == add) ? value + operand : value * operand;
+    }
+
+    @Override
+    public void read(long from, long[] dst, int offset, int count) {
+        // operands held in arrays are read in place, anything else is evaluated into a block first
+        long[] leftArray = this.left.array();
+        long[] rightArray = (this.right != null) ? this.right.array() : null;
+        long[] operands = (this.right != null && rightArray == null) ? new long[Math.min(count, blockSize)] : null;
+
+        for (int done = 0; done < count; done += blockSize) {
+            int n = Math.min(blockSize, count - done);
+            int start = offset + done;
+
+            long[] a = leftArray;
+            int aStart = (int) from + done;
+
+            if (a == null) {
+                // the left operand is evaluated straight into place
+                this.left.read(from + done, dst, start, n);
+                a = dst;
+                aStart = start;
+            }
+
+            if (this.right == null) {
+                this.apply(a, aStart, dst, start, n);
+                continue;
+            }
+
+            long[] b = rightArray;
+            int bStart = (int) from + done;
+
+            if (b == null) {
+                this.right.read(from + done, operands, 0, n);
+                b = operands;
+                bStart = 0;
+            }
+
+            this.combine(a, aStart, b, bStart, dst, start, n);
+        }
+    }
+
+    private void apply(long[] a, int aStart, long[] dst, int start, int n) {
+        if (this.operation == add) {
+            Kernels.loops().add(a, aStart, this.scalar, dst, start, n);
+        } else {
+            Kernels.loops().multiply(a, aStart, this.scalar, dst, start, n);
+        }
+    }
+
+    private void combine(long[] a, int aStart, long[] b, int bStart, long[] dst, int start, int n) {
+        if (this.operation == add) {
+            Kernels.loops().add(a, aStart, b, bStart, dst, start, n);
+        } else {
+            Kernels.loops().multiply(a, aStart, b, bStart, dst, start, n);
+        }
+    }
+
+    @Override
+    public long[] toArray() {
+        final long[] elements = new long[this.arrayLength()];
+
+        // pieces are independent, every thread walks the whole tree for its own blocks
+        Kernels.forEach(elements.length, (from, count) -> this.read(from, elements, (int) from, count));
+
+        return elements;
+    }
+}
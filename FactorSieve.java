@@ -0,0 +1,180 @@
+import java.util.Arrays;
+
+/**
+ * Windowed factor sieve, strips every base prime up to sqrt(end) out of a
+ * window of consecutive numbers, smallest prime first. What is left over
+ * in each slot is either 1 or a single prime larger than the square root.
+ *
+ * The same pass can also build the divisor sum sigma(n), which is
+ * multiplicative, so each prime power only multiplies in its own term.
+ */
+class FactorSieve {
+
+    // window size, the remainders alone take 8 bytes per value
+    public static final int segmentSize = 1024 * 64;
+
+    // we only ever need to know whether there are exactly two factors
+    private static final byte factorCap = 3;
+
+    private final long[] remainder;
+    private final byte[] factors;
+    // only allocated once a divisor sum window is requested
+    private long[] sigma;
+    private long low;
+    private int span;
+
+    public FactorSieve() {
+        this.remainder = new long[segmentSize];
+        this.factors = new byte[segmentSize];
+        this.sigma = null;
+        this.low = 0;
+        this.span = 0;
+    }
+
+    /**
+     * Estimates how far past start we need to look to find count semiprimes
+     */
+    // semiprimes near x have a density of about ln(ln(x)) / ln(x)
+    public static long estimatePQSpan(long start, long count) {
+        double x = Math.max((double) start, 16.0);
+        double gap = Math.log(x) / Math.log(Math.log(x));
+
+        return (long) ((double) count * gap * 1.2) + 64;
+    }
+
+    /**
+     * Estimates how far past start we need to look to find count abundant numbers
+     */
+    // abundant numbers have a natural density of about 0.2476
+    public static long estimateAbundantSpan(long start, long count) {
+        return (long) ((double) count * 4.1) + 64;
+    }
+
+    /**
+     * Factors the window [low, low + span), span is limited to segmentSize
+     */
+    public void sieve(long low, int span) {
+        final int[] primes = this.prepare(low, span);
+        final long high = low + this.span;
+
+        Arrays.fill(this.factors, 0, this.span, (byte) 0);
+
+        for (int p : primes) {
+            if ((long) p * p >= high) {
+                break;
+            }
+
+            // every multiple of p^k gives up one more factor of p, no modulo needed
+            for (long pk = p; pk < high; pk *= p) {
+                long first = ((low + pk - 1) / pk) * pk;
+
+                for (long j = first - low; j < this.span; j += pk) {
+                    if (this.factors[(int) j] < factorCap) {
+                        this.remainder[(int) j] /= p;
+                        this.factors[(int) j]++;
+                    }
+                }
+
+                if (pk > high / p) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the divisor sums of the window [low, low + span), span is limited to segmentSize
+     * and low has to be at least 1
+     */
+    public void sieveSigma(long low, int span) {
+        final int[] primes = this.prepare(low, span);
+        final long high = low + this.span;
+
+        if (this.sigma == null) {
+            this.sigma = new long[segmentSize];
+        }
+
+        Arrays.fill(this.sigma, 0, this.span, 1L);
+
+        for (int p : primes) {
+            if ((long) p * p >= high) {
+                break;
+            }
+
+            long first = ((low + p - 1) / p) * p;
+
+            for (long j = first - low; j < this.span; j += p) {
+                // divide out the whole power of p, summing 1 + p + ... + p^k on the way
+                long r = this.remainder[(int) j] / p;
+                long pk = p;
+                long term = 1 + p;
+
+                while (r % p == 0) {
+                    r /= p;
+                    pk *= p;
+                    term += pk;
+                }
+
+                this.remainder[(int) j] = r;
+                this.sigma[(int) j] *= term;
+            }
+        }
+
+        // whatever is left is a single prime above the square root
+        for (int i = 0; i < this.span; i++) {
+            if (this.remainder[i] > 1) {
+                this.sigma[i] *= this.remainder[i] + 1;
+            }
+        }
+    }
+
+    /**
+     * Sets up the window and returns the base primes it needs
+     */
+    private int[] prepare(long low, int span) {
+        this.low = low;
+        this.span = Math.min(span, segmentSize);
+
+        for (int i = 0; i < this.span; i++) {
+            this.remainder[i] = low + i;
+        }
+
+        return SegmentedSieve.basePrimes(SegmentedSieve.isqrt(low + this.span - 1));
+    }
+
+    /**
+     * Returns the start of the current window
+     */
+    public long getLow() {
+        return this.low;
+    }
+
+    /**
+     * Returns the length of the current window
+     */
+    public int getSpan() {
+        return this.span;
+    }
+
+    /**
+     * Returns whether low + offset has exactly two prime factors
+     */
+    public boolean isPQ(int offset) {
+        int count = this.factors[offset] + ((this.remainder[offset] > 1) ? 1 : 0);
+        return count == 2;
+    }
+
+    /**
+     * Returns the sum of the proper divisors of low + offset
+     */
+    public long getProperSum(int offset) {
+        return this.sigma[offset] - (this.low + offset);
+    }
+
+    /**
+     * Returns whether the proper divisors of low + offset sum to more than it
+     */
+    public boolean isAbundant(int offset) {
+        return this.getProperSum(offset) > this.low + offset;
+    }
+}
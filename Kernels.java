@@ -0,0 +1,671 @@
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.LongBinaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * Parallel loops over the elements of a storage, every vector operation that
+ * visits all elements goes through here.
+ *
+ * A range is halved until the pieces are small enough, the halves are forked
+ * onto the fork join pool the caller runs in (the common pool otherwise) and
+ * idle threads steal the ones busy threads have not started yet. Nothing
+ * creates threads of its own. Elements held in heap arrays are handed to the
+ * loop body in place, anything else is read out a block at a time.
+ *
+ * The innermost reductions are SIMD code from the Java Vector API when the
+ * simd/VectorLoops class was compiled and jdk.incubator.vector is
+ * available at run time, plain loops otherwise. Element wise maps always
+ * take the plain loops, the JIT vectorizes those well enough already.
+ */
+final class Kernels {
+
+    // pieces smaller than this are not worth forking
+    private static final int minLeaf = 16 * 1024;
+    // and pieces bigger than this are split anyway, a piece always fits an int
+    private static final int maxLeaf = 1 << 24;
+    // a few pieces per thread so uneven pieces still balance
+    private static final int leavesPerThread = 4;
+    // elements per block when storage that is not a plain array is read out
+    private static final int readBlock = 4096;
+    // buckets per counting pass of select, every pass narrows the range this many times
+    private static final int selectBits = 12;
+    // select sorts the candidates left once there are no more than this
+    private static final int selectGather = 1 << 20;
+
+    private static final ThreadLocal<long[]> readBuffers = ThreadLocal.withInitial(() -> new long[readBlock]);
+
+    private static final Loops scalarLoops = new ScalarLoops();
+    // null when the Vector API can not be used
+    private static final Loops simdLoops = Kernels.loadSimdLoops();
+    // SIMD where it measured faster, plain loops for the rest
+    private static final Loops fastestLoops = (simdLoops != null) ? new PickedLoops(simdLoops, scalarLoops) : scalarLoops;
+
+    private static Loops loops = fastestLoops;
+
+    /**
+     * The innermost loops over a run of elements
+     */
+    interface Loops {
+        long sum(long[] elements, int from, int to);
+
+        long minimum(long[] elements, int from, int to);
+
+        long maximum(long[] elements, int from, int to);
+
+        long frequency(long[] elements, long value, int from, int to);
+
+        // dst[start + i] = a[aStart + i] + scalar
+        void add(long[] a, int aStart, long scalar, long[] dst, int start, int n);
+
+        // dst[start + i] = a[aStart + i] * scalar
+        void multiply(long[] a, int aStart, long scalar, long[] dst, int start, int n);
+
+        // dst[start + i] = a[aStart + i] + b[bStart + i]
+        void add(long[] a, int aStart, long[] b, int bStart, long[] dst, int start, int n);
+
+        // dst[start + i] = a[aStart + i] * b[bStart + i]
+        void multiply(long[] a, int aStart, long[] b, int bStart, long[] dst, int start, int n);
+    }
+
+    /**
+     * Folds elements[from, to) into a partial result
+     */
+    interface BlockReducer {
+        long reduce(long[] elements, int from, int to);
+    }
+
+    /**
+     * Folds elements[from, to) into a partial result object
+     */
+    interface BlockCollector<T> {
+        void collect(T partial, long[] elements, int from, int to);
+    }
+
+    /**
+     * Works on count elements starting at from
+     */
+    interface RangeAction {
+        void apply(long from, int count);
+    }
+
+    private Kernels() {
+    }
+
+    /**
+     * Returns the SIMD loops, or null when they were not compiled or the
+     * incubator module was not added to the run time
+     */
+    private static Loops loadSimdLoops() {
+        try {
+            Loops simd = (Loops) Class.forName("VectorLoops").getDeclaredConstructor().newInstance();
+
+            // linking the Vector API only fails on first use
+            simd.sum(new long[1], 0, 1);
+
+            return simd;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Uses the SIMD loops from now on when they are available, the plain ones otherwise
+     */
+    public static void setSimd(boolean simd) {
+        Kernels.loops = simd ? fastestLoops : scalarLoops;
+    }
+
+    /**
+     * Returns whether the SIMD loops are in use
+     */
+    public static boolean isSimd() {
+        return Kernels.loops != scalarLoops;
+    }
+
+    /**
+     * Returns the loops in use
+     */
+    public static Loops loops() {
+        return Kernels.loops;
+    }
+
+    /**
+     * Returns the plain loops
+     */
+    public static Loops scalarLoops() {
+        return scalarLoops;
+    }
+
+    /**
+     * Returns the SIMD loops for every operation, null when they are not
+     * available. The loops in use only take the ones that pay off.
+     */
+    public static Loops simdLoops() {
+        return simdLoops;
+    }
+
+    /**
+     * Returns how many elements a piece of the range gets
+     */
+    private static long leafSize(long length) {
+        long pieces = (long) Vector.rtThreadCount * leavesPerThread;
+        return Math.min(maxLeaf, Math.max(minLeaf, (length + pieces - 1) / pieces));
+    }
+
+    /**
+     * Folds every element of the storage, reducer folds a run of elements into a
+     * partial result and combiner merges partial results, identity is neutral to it
+     */
+    public static long reduce(Storage storage, long identity, BlockReducer reducer, LongBinaryOperator combiner) {
+        long length = storage.length();
+        return new Reduce(storage, storage.chunks(), 0, length, Kernels.leafSize(length), identity, reducer, combiner).invoke();
+    }
+
+    /**
+     * Folds every element of the storage into partial result objects, every
+     * piece starts from a new one and combiner merges two into one
+     */
+    public static <T> T collect(Storage storage, Supplier<T> supplier, BlockCollector<T> collector, BinaryOperator<T> combiner) {
+        long length = storage.length();
+        return new Collect<T>(storage, storage.chunks(), 0, length, Kernels.leafSize(length), supplier, collector, combiner).invoke();
+    }
+
+    /**
+     * Runs the action over [0, length) in pieces, concurrently
+     */
+    public static void forEach(long length, RangeAction action) {
+        new ForEach(0, length, Kernels.leafSize(length), action).invoke();
+    }
+
+    /**
+     * Runs task(0) ... task(tasks - 1) concurrently, each a piece of its own.
+     * For a few coarse units of work, e.g. sieve segments or sort blocks,
+     * that the element counts of forEach would leave on one thread.
+     */
+    public static void forEachTask(int tasks, IntConsumer task) {
+        new ForEach(0, tasks, 1, (from, count) -> task.accept((int) from)).invoke();
+    }
+
+    /**
+     * Runs the action over the blocks of blockSize elements that make up
+     * [0, length), concurrently. The range is split by elements as in
+     * forEach, every piece takes the blocks starting in it, so blocks far
+     * bigger than a piece still spread over the threads.
+     */
+    public static void forEachBlock(long length, int blockSize, RangeAction action) {
+        Kernels.forEach(length, (from, count) -> {
+            long first = (from + blockSize - 1) / blockSize;
+            long end = (from + count + blockSize - 1) / blockSize;
+
+            if (first < end) {
+                action.apply(first, (int) (end - first));
+            }
+        });
+    }
+
+    public static long sum(Storage storage) {
+        return Kernels.reduce(storage, 0L, Kernels::sum, Long::sum);
+    }
+
+    public static long minimum(Storage storage) {
+        return Kernels.reduce(storage, Long.MAX_VALUE, Kernels::minimum, Math::min);
+    }
+
+    public static long maximum(Storage storage) {
+        return Kernels.reduce(storage, Long.MIN_VALUE, Kernels::maximum, Math::max);
+    }
+
+    public static long frequency(Storage storage, long value) {
+        return Kernels.reduce(storage, 0L, (elements, from, to) -> Kernels.frequency(elements, value, from, to), Long::sum);
+    }
+
+    /**
+     * Returns the element that would be at index rank were the storage sorted,
+     * without sorting it. Every pass counts the elements still in the running
+     * into buckets by value and keeps only the bucket holding rank, so each
+     * one narrows the range 4096 times, a handful of passes at most even over
+     * all 64 bits. The few candidates then left are gathered and sorted.
+     * Elements are expected in [minimum, maximum], with wrong bounds it just
+     * takes a few more passes. Bounds that are not known are Long.MIN_VALUE
+     * and Long.MAX_VALUE, one pass finds both before counting starts, all 64
+     * bits would pile narrow elements into a single bucket.
+     */
+    public static long select(Storage storage, long rank, long minimum, long maximum) {
+        long length = storage.length();
+        long low = minimum;
+        long high = maximum;
+
+        if (low == Long.MIN_VALUE || high == Long.MAX_VALUE) {
+            long[] bounds = Kernels.bounds(storage);
+
+            low = bounds[0];
+            high = bounds[1];
+        }
+        // elements known to be smaller than low
+        long below = 0;
+        long candidates = length;
+        // the first pass also checks the bounds
+        boolean checked = false;
+
+        while (!checked || (low != high && candidates > selectGather)) {
+            final long from = low;
+            final long to = high;
+            // high - low read unsigned, it fits even when the signed difference overflows
+            final int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(to - from) - selectBits);
+
+            long[] counts = Kernels.collect(storage, () -> new long[1 << selectBits], (partial, elements, start, end) -> {
+                for (int i = start; i < end; i++) {
+                    long value = elements[i];
+
+                    if (value >= from && value <= to) {
+                        partial[(int) ((value - from) >>> shift)]++;
+                    }
+                }
+            }, (left, right) -> {
+                for (int b = 0; b < left.length; b++) {
+                    left[b] += right[b];
+                }
+                return left;
+            });
+
+            // bounds that were off left some elements out, start over from the whole range
+            if (Arrays.stream(counts).sum() != candidates) {
+                low = Long.MIN_VALUE;
+                high = Long.MAX_VALUE;
+                continue;
+            }
+
+            checked = true;
+
+            int bucket = 0;
+            while (below + counts[bucket] <= rank) {
+                below += counts[bucket];
+                bucket++;
+            }
+
+            long width = (1L << shift) - 1;
+
+            candidates = counts[bucket];
+            low = from + ((long) bucket << shift);
+            high = (Long.compareUnsigned(width, to - low) < 0) ? low + width : to;
+        }
+
+        if (low == high) {
+            return low;
+        }
+
+        final long from = low;
+        final long to = high;
+
+        Gathered gathered = Kernels.collect(storage, Gathered::new, (partial, elements, start, end) -> {
+            for (int i = start; i < end; i++) {
+                if (elements[i] >= from && elements[i] <= to) {
+                    partial.add(elements[i]);
+                }
+            }
+        }, Gathered::append);
+
+        Arrays.sort(gathered.values, 0, gathered.size);
+
+        return gathered.values[(int) (rank - below)];
+    }
+
+    /**
+     * Returns the smallest and the largest element, in one pass
+     */
+    private static long[] bounds(Storage storage) {
+        return Kernels.collect(storage, () -> new long[] { Long.MAX_VALUE, Long.MIN_VALUE }, (partial, elements, from, to) -> {
+            // a block at a time, the second loop then reads it from cache
+            for (int start = from; start < to; start += readBlock) {
+                int end = Math.min(to, start + readBlock);
+
+                partial[0] = Math.min(partial[0], Kernels.minimum(elements, start, end));
+                partial[1] = Math.max(partial[1], Kernels.maximum(elements, start, end));
+            }
+        }, (left, right) -> {
+            left[0] = Math.min(left[0], right[0]);
+            left[1] = Math.max(left[1], right[1]);
+            return left;
+        });
+    }
+
+    /**
+     * Elements picked out by select, in a growing array
+     */
+    private static final class Gathered {
+        long[] values = new long[16];
+        int size = 0;
+
+        void add(long value) {
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+            }
+            this.values[this.size++] = value;
+        }
+
+        Gathered append(Gathered other) {
+            if (this.size + other.size > this.values.length) {
+                this.values = Arrays.copyOf(this.values, Math.max(this.size + other.size, this.size * 2));
+            }
+            System.arraycopy(other.values, 0, this.values, this.size, other.size);
+            this.size += other.size;
+
+            return this;
+        }
+    }
+
+    public static long sum(long[] elements, int from, int to) {
+        return Kernels.loops.sum(elements, from, to);
+    }
+
+    public static long minimum(long[] elements, int from, int to) {
+        return Kernels.loops.minimum(elements, from, to);
+    }
+
+    public static long maximum(long[] elements, int from, int to) {
+        return Kernels.loops.maximum(elements, from, to);
+    }
+
+    public static long frequency(long[] elements, long value, int from, int to) {
+        return Kernels.loops.frequency(elements, value, from, to);
+    }
+
+    /**
+     * Plain loops, left to the JIT to vectorize where it can
+     */
+    private static final class ScalarLoops implements Loops {
+
+        @Override
+        public long sum(long[] elements, int from, int to) {
+            long sum = 0;
+
+            for (int i = from; i < to; i++) {
+                sum += elements[i];
+            }
+
+            return sum;
+        }
+
+        @Override
+        public long minimum(long[] elements, int from, int to) {
+            long min = Long.MAX_VALUE;
+
+            for (int i = from; i < to; i++) {
+                min = Math.min(min, elements[i]);
+            }
+
+            return min;
+        }
+
+        @Override
+        public long maximum(long[] elements, int from, int to) {
+            long max = Long.MIN_VALUE;
+
+            for (int i = from; i < to; i++) {
+                max = Math.max(max, elements[i]);
+            }
+
+            return max;
+        }
+
+        @Override
+        public long frequency(long[] elements, long value, int from, int to) {
+            long count = 0;
+
+            for (int i = from; i < to; i++) {
+                count = (elements[i] == value) ? count + 1 : count;
+            }
+
+            return count;
+        }
+
+        @Override
+        public void add(long[] a, int aStart, long scalar, long[] dst, int start, int n) {
+            for (int i = 0; i < n; i++) {
+                dst[start + i] = a[aStart + i] + scalar;
+            }
+        }
+
+        @Override
+        public void multiply(long[] a, int aStart, long scalar, long[] dst, int start, int n) {
+            for (int i = 0; i < n; i++) {
+                dst[start + i] = a[aStart + i] * scalar;
+            }
+        }
+
+        @Override
+        public void add(long[] a, int aStart, long[] b, int bStart, long[] dst, int start, int n) {
+            for (int i = 0; i < n; i++) {
+                dst[start + i] = a[aStart + i] + b[bStart + i];
+            }
+        }
+
+        @Override
+        public void multiply(long[] a, int aStart, long[] b, int bStart, long[] dst, int start, int n) {
+            for (int i = 0; i < n; i++) {
+                dst[start + i] = a[aStart + i] * b[bStart + i];
+            }
+        }
+    }
+
+    /**
+     * The reductions of one set of loops and the element wise maps of another.
+     * SIMD sum, minimum, maximum and frequency run 2-4x the plain loops, but
+     * the JIT already vectorizes the plain maps, which then match or beat
+     * LongVector. A scalar multiply even runs at a third of the speed on
+     * LongVector (java VectorBenchmark simd).
+     */
+    private static final class PickedLoops implements Loops {
+        private final Loops reductions;
+        private final Loops maps;
+
+        PickedLoops(Loops reductions, Loops maps) {
+            this.reductions = reductions;
+            this.maps = maps;
+        }
+
+        @Override
+        public long sum(long[] elements, int from, int to) {
+            return this.reductions.sum(elements, from, to);
+        }
+
+        @Override
+        public long minimum(long[] elements, int from, int to) {
+            return this.reductions.minimum(elements, from, to);
+        }
+
+        @Override
+        public long maximum(long[] elements, int from, int to) {
+            return this.reductions.maximum(elements, from, to);
+        }
+
+        @Override
+        public long frequency(long[] elements, long value, int from, int to) {
+            return this.reductions.frequency(elements, value, from, to);
+        }
+
+        @Override
+        public void add(long[] a, int aStart, long scalar, long[] dst, int start, int n) {
+            this.maps.add(a, aStart, scalar, dst, start, n);
+        }
+
+        @Override
+        public void multiply(long[] a, int aStart, long scalar, long[] dst, int start, int n) {
+            this.maps.multiply(a, aStart, scalar, dst, start, n);
+        }
+
+        @Override
+        public void add(long[] a, int aStart, long[] b, int bStart, long[] dst, int start, int n) {
+            this.maps.add(a, aStart, b, bStart, dst, start, n);
+        }
+
+        @Override
+        public void multiply(long[] a, int aStart, long[] b, int bStart, long[] dst, int start, int n) {
+            this.maps.multiply(a, aStart, b, bStart, dst, start, n);
+        }
+    }
+
+    // fork join tasks are serializable by inheritance only, these are never serialized
+    @SuppressWarnings("serial")
+    private static final class Reduce extends RecursiveTask<Long> {
+        private final Storage storage;
+        // null when the elements are not held in heap arrays
+        private final long[][] chunks;
+        private final long from;
+        private final long to;
+        private final long leaf;
+        private final long identity;
+        private final BlockReducer reducer;
+        private final LongBinaryOperator combiner;
+
+        Reduce(Storage storage, long[][] chunks, long from, long to, long leaf, long identity,
+               BlockReducer reducer, LongBinaryOperator combiner) {
+            this.storage = storage;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+            this.leaf = leaf;
+            this.identity = identity;
+            this.reducer = reducer;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected Long compute() {
+            if (this.to - this.from <= this.leaf) {
+                long[] result = { this.identity };
+
+                Kernels.runs(this.storage, this.chunks, this.from, this.to, (elements, from, to) ->
+                        result[0] = this.combiner.applyAsLong(result[0], this.reducer.reduce(elements, from, to)));
+
+                return result[0];
+            }
+
+            long middle = (this.from + this.to) >>> 1;
+
+            Reduce right = new Reduce(this.storage, this.chunks, middle, this.to, this.leaf,
+                    this.identity, this.reducer, this.combiner);
+            right.fork();
+
+            long left = new Reduce(this.storage, this.chunks, this.from, middle, this.leaf,
+                    this.identity, this.reducer, this.combiner).compute();
+
+            return this.combiner.applyAsLong(left, right.join());
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Collect<T> extends RecursiveTask<T> {
+        private final Storage storage;
+        // null when the elements are not held in heap arrays
+        private final long[][] chunks;
+        private final long from;
+        private final long to;
+        private final long leaf;
+        private final Supplier<T> supplier;
+        private final BlockCollector<T> collector;
+        private final BinaryOperator<T> combiner;
+
+        Collect(Storage storage, long[][] chunks, long from, long to, long leaf,
+                Supplier<T> supplier, BlockCollector<T> collector, BinaryOperator<T> combiner) {
+            this.storage = storage;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+            this.leaf = leaf;
+            this.supplier = supplier;
+            this.collector = collector;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected T compute() {
+            if (this.to - this.from <= this.leaf) {
+                T partial = this.supplier.get();
+
+                Kernels.runs(this.storage, this.chunks, this.from, this.to, (elements, from, to) ->
+                        this.collector.collect(partial, elements, from, to));
+
+                return partial;
+            }
+
+            long middle = (this.from + this.to) >>> 1;
+
+            Collect<T> right = new Collect<T>(this.storage, this.chunks, middle, this.to, this.leaf,
+                    this.supplier, this.collector, this.combiner);
+            right.fork();
+
+            T left = new Collect<T>(this.storage, this.chunks, this.from, middle, this.leaf,
+                    this.supplier, this.collector, this.combiner).compute();
+
+            return this.combiner.apply(left, right.join());
+        }
+    }
+
+    /**
+     * Visits [from, to) of the storage as runs of array elements, heap arrays
+     * in place and anything else read out a block at a time
+     */
+    private static void runs(Storage storage, long[][] chunks, long from, long to, Run run) {
+        if (chunks != null) {
+            // every chunk but the last has the same length
+            long chunkLength = chunks[0].length;
+
+            for (long i = from; i < to; ) {
+                long[] chunk = chunks[(int) (i / chunkLength)];
+                int start = (int) (i % chunkLength);
+                int end = (int) Math.min(chunk.length, start + (to - i));
+
+                run.visit(chunk, start, end);
+                i += end - start;
+            }
+
+            return;
+        }
+
+        long[] buffer = Kernels.readBuffers.get();
+
+        for (long i = from; i < to; i += readBlock) {
+            int count = (int) Math.min(readBlock, to - i);
+
+            storage.read(i, buffer, 0, count);
+            run.visit(buffer, 0, count);
+        }
+    }
+
+    private interface Run {
+        void visit(long[] elements, int from, int to);
+    }
+
+    @SuppressWarnings("serial")
+    private static final class ForEach extends RecursiveAction {
+        private final long from;
+        private final long to;
+        private final long leaf;
+        private final RangeAction action;
+
+        ForEach(long from, long to, long leaf, RangeAction action) {
+            this.from = from;
+            this.to = to;
+            this.leaf = leaf;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= this.leaf) {
+                this.action.apply(this.from, (int) (this.to - this.from));
+                return;
+            }
+
+            long middle = (this.from + this.to) >>> 1;
+
+            invokeAll(new ForEach(this.from, middle, this.leaf, this.action),
+                      new ForEach(middle, this.to, this.leaf, this.action));
+        }
+    }
+}
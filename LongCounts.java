@@ -0,0 +1,223 @@
+/**
+ * How often every value occurs, kept in primitive arrays so counting never
+ * boxes. The 4096 values from base on, by default the usual output of the
+ * random generator, are counted straight in a plain array, everything else
+ * in an open addressing table with linear probing where a count of 0 marks
+ * a free slot.
+ */
+class LongCounts {
+
+    // values in [base, base + denseSize) are counted in the plain array
+    private static final int denseSize = 4096;
+    private static final int initialCapacity = 64;
+
+    private final long base;
+    private final long[] dense;
+    private int denseDistinct;
+
+    private long[] keys;
+    private long[] counts;
+    private int size;
+
+    public LongCounts() {
+        this(0);
+    }
+
+    public LongCounts(long base) {
+        this.base = base;
+        this.dense = new long[denseSize];
+        this.denseDistinct = 0;
+        this.keys = new long[initialCapacity];
+        this.counts = new long[initialCapacity];
+        this.size = 0;
+    }
+
+    /**
+     * Returns the number of distinct values counted
+     */
+    public int distinct() {
+        return this.denseDistinct + this.size;
+    }
+
+    /**
+     * Counts every element of the storage. Returns null when there are more
+     * than limit distinct values, counting stops soon after there are.
+     */
+    public static LongCounts of(Storage storage, long base, int limit) {
+        LongCounts counts = Kernels.collect(storage, () -> new LongCounts(base), (partial, elements, from, to) -> {
+            for (int i = from; i < to && partial.distinct() <= limit; i++) {
+                partial.add(elements[i], 1);
+            }
+        }, (left, right) -> {
+            if (left.distinct() > limit) {
+                return left;
+            }
+            return (right.distinct() > limit) ? right : left.merge(right);
+        });
+
+        return (counts.distinct() > limit) ? null : counts;
+    }
+
+    public void add(long value, long count) {
+        long offset = value - this.base;
+
+        // read unsigned, values below base land far above the plain array
+        if (Long.compareUnsigned(offset, denseSize) < 0) {
+            if (this.dense[(int) offset] == 0) {
+                this.denseDistinct++;
+            }
+            this.dense[(int) offset] += count;
+            return;
+        }
+
+        int mask = this.keys.length - 1;
+        int slot = LongCounts.hash(value) & mask;
+
+        while (this.counts[slot] != 0 && this.keys[slot] != value) {
+            slot = (slot + 1) & mask;
+        }
+
+        if (this.counts[slot] == 0) {
+            this.keys[slot] = value;
+            this.size++;
+        }
+        this.counts[slot] += count;
+
+        // kept at most half full so probes stay short
+        if (this.size * 2 > this.keys.length) {
+            this.grow(this.keys.length * 2);
+        }
+    }
+
+    /**
+     * Counts every one of elements[from, to)
+     */
+    public void count(long[] elements, int from, int to) {
+        for (int i = from; i < to; i++) {
+            this.add(elements[i], 1);
+        }
+    }
+
+    public long get(long value) {
+        long offset = value - this.base;
+
+        if (Long.compareUnsigned(offset, denseSize) < 0) {
+            return this.dense[(int) offset];
+        }
+
+        int mask = this.keys.length - 1;
+        int slot = LongCounts.hash(value) & mask;
+
+        while (this.counts[slot] != 0) {
+            if (this.keys[slot] == value) {
+                return this.counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Adds the counts of other to these, the smaller of the two is walked
+     */
+    public LongCounts merge(LongCounts other) {
+        LongCounts into = (this.size >= other.size) ? this : other;
+        LongCounts from = (into == this) ? other : this;
+
+        // grown once up front rather than doubling its way there
+        int capacity = into.keys.length;
+        while ((long) (into.size + from.size) * 2 > capacity) {
+            capacity *= 2;
+        }
+        into.grow(capacity);
+
+        for (int v = 0; v < denseSize; v++) {
+            if (from.dense[v] != 0) {
+                into.add(from.base + v, from.dense[v]);
+            }
+        }
+
+        for (int slot = 0; slot < from.keys.length; slot++) {
+            if (from.counts[slot] != 0) {
+                into.add(from.keys[slot], from.counts[slot]);
+            }
+        }
+
+        return into;
+    }
+
+    /**
+     * Returns the most frequent value, -1 when two or more share the highest count
+     */
+    public long mode() {
+        long best = 0;
+        long mode = -1;
+
+        for (int v = 0; v < denseSize; v++) {
+            if (this.dense[v] > best) {
+                best = this.dense[v];
+                mode = this.base + v;
+            } else if (this.dense[v] == best && best > 0) {
+                mode = -1;
+            }
+        }
+
+        for (int slot = 0; slot < this.keys.length; slot++) {
+            if (this.counts[slot] > best) {
+                best = this.counts[slot];
+                mode = this.keys[slot];
+            } else if (this.counts[slot] == best && best > 0) {
+                mode = -1;
+            }
+        }
+
+        return mode;
+    }
+
+    interface Visitor {
+        void visit(long value, long count);
+    }
+
+    /**
+     * Visits every counted value, in no particular order
+     */
+    public void forEach(Visitor visitor) {
+        for (int v = 0; v < denseSize; v++) {
+            if (this.dense[v] != 0) {
+                visitor.visit(this.base + v, this.dense[v]);
+            }
+        }
+
+        for (int slot = 0; slot < this.keys.length; slot++) {
+            if (this.counts[slot] != 0) {
+                visitor.visit(this.keys[slot], this.counts[slot]);
+            }
+        }
+    }
+
+    private void grow(int capacity) {
+        if (capacity == this.keys.length) {
+            return;
+        }
+
+        long[] oldKeys = this.keys;
+        long[] oldCounts = this.counts;
+
+        this.keys = new long[capacity];
+        this.counts = new long[capacity];
+        this.size = 0;
+
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldCounts[slot] != 0) {
+                this.add(oldKeys[slot], oldCounts[slot]);
+            }
+        }
+    }
+
+    private static int hash(long value) {
+        // multiplicative mixing, sequential values spread over the whole table
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
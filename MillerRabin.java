@@ -0,0 +1,171 @@
+/**
+ * Deterministic Miller-Rabin primality test for every positive long,
+ * uses Montgomery multiplication so no step ever overflows 64 bits.
+ */
+// reference: https://miller-rabin.appspot.com/ (7 base set valid for n < 2^64)
+// reference: https://en.wikipedia.org/wiki/Montgomery_modular_multiplication
+class MillerRabin {
+
+    private static final long[] witnesses = { 2, 325, 9375, 28178, 450775, 9780504, 1795265022 };
+
+    // enough for every n < 4759123141
+    private static final long[] witnessesSmall = { 2, 7, 61 };
+
+    private static final int[] smallPrimes = { 2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47, 53 };
+
+    private final long modulus;
+    // -modulus^-1 mod 2^64
+    private final long inverse;
+    // 2^128 mod modulus, used to move values into montgomery form
+    private final long r2;
+    private final long one;
+    private final long minusOne;
+
+    /**
+     * Prepares montgomery constants for an odd modulus
+     */
+    MillerRabin(long modulus) {
+        this.modulus = modulus;
+
+        // newton iteration doubles the correct low bits each step, 5 steps covers 64 bits
+        long inv = modulus;
+        for (int i = 0; i < 5; i++) {
+            inv *= 2 - modulus * inv;
+        }
+        this.inverse = -inv;
+
+        // 2^64 mod n, then double it 64 more times to get 2^128 mod n
+        long r = Long.remainderUnsigned(-modulus, modulus);
+        this.one = r;
+
+        for (int i = 0; i < 64; i++) {
+            r <<= 1;
+            if (Long.compareUnsigned(r, modulus) >= 0) {
+                r -= modulus;
+            }
+        }
+
+        this.r2 = r;
+        this.minusOne = modulus - this.one;
+    }
+
+    /**
+     * Returns the high 64 bits of the unsigned 128 bit product
+     */
+    public static long unsignedMultiplyHigh(long a, long b) {
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+
+    /**
+     * Montgomery reduction of the 128 bit value hi:lo, returns hi:lo * 2^-64 mod n
+     */
+    private long reduce(long hi, long lo) {
+        long m = lo * this.inverse;
+        // lo + low(m * n) is always 0 mod 2^64, it only carries when lo is non zero
+        long t = hi + unsignedMultiplyHigh(m, this.modulus) + (lo != 0 ? 1 : 0);
+
+        return (Long.compareUnsigned(t, this.modulus) >= 0) ? t - this.modulus : t;
+    }
+
+    /**
+     * Multiplies two values in montgomery form
+     */
+    long multiply(long a, long b) {
+        return this.reduce(unsignedMultiplyHigh(a, b), a * b);
+    }
+
+    /**
+     * Moves a value below the modulus into montgomery form
+     */
+    long toMontgomery(long a) {
+        return this.multiply(a, this.r2);
+    }
+
+    /**
+     * Moves a value out of montgomery form
+     */
+    long fromMontgomery(long a) {
+        return this.reduce(0, a);
+    }
+
+    /**
+     * Raises a montgomery form base to the exponent
+     */
+    long power(long base, long exponent) {
+        long result = this.one;
+
+        while (exponent != 0) {
+            if ((exponent & 1) != 0) {
+                result = this.multiply(result, base);
+            }
+            base = this.multiply(base, base);
+            exponent >>>= 1;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns whether the odd modulus is a strong probable prime to every witness
+     */
+    private boolean passesWitnesses(long[] bases) {
+        long d = this.modulus - 1;
+        int s = Long.numberOfTrailingZeros(d);
+        d >>>= s;
+
+        for (long a : bases) {
+            a %= this.modulus;
+
+            // a witness that is a multiple of n says nothing
+            if (a == 0) {
+                continue;
+            }
+
+            long x = this.power(this.toMontgomery(a), d);
+
+            if (x == this.one || x == this.minusOne) {
+                continue;
+            }
+
+            boolean composite = true;
+
+            for (int r = 1; r < s; r++) {
+                x = this.multiply(x, x);
+
+                if (x == this.minusOne) {
+                    composite = false;
+                    break;
+                }
+            }
+
+            if (composite) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns whether the number is prime, exact for every long
+     */
+    public static boolean isPrime(long number) {
+        if (number < 2) {
+            return false;
+        }
+
+        // strip the small factors first, most composites stop here
+        for (int p : smallPrimes) {
+            if (number % p == 0) {
+                return number == p;
+            }
+        }
+
+        // no factor below 53, so anything below 53^2 is prime
+        if (number < 53 * 53) {
+            return true;
+        }
+
+        return new MillerRabin(number).passesWitnesses((number < 4759123141L) ? witnessesSmall : witnesses);
+    }
+}
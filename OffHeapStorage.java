@@ -0,0 +1,164 @@
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Elements kept outside the Java heap in direct buffers, so big vectors
+ * neither need a huge heap nor get walked by the garbage collector.
+ *
+ * Every vector reading the storage holds a reference, once the last one is
+ * released the memory is handed back right away instead of whenever the
+ * collector notices the buffer. A direct buffer is limited to 2GB, so the
+ * elements are spread over fixed size chunks.
+ *
+ * The chunks may also be read only mappings of a file, releasing the last
+ * reference then unmaps them.
+ */
+class OffHeapStorage extends Storage {
+
+    // 2^27 elements, 1GB per chunk
+    private static final int chunkShift = 27;
+    private static final int chunkSize = 1 << chunkShift;
+    private static final int chunkMask = chunkSize - 1;
+
+    // frees a direct buffer on demand, null when the runtime does not allow it
+    private static final Object unsafe;
+    private static final Method invokeCleaner;
+
+    static {
+        Object instance = null;
+        Method method = null;
+
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+
+            instance = field.get(null);
+            method = type.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // the collector still frees the buffers, only later
+            instance = null;
+            method = null;
+        }
+
+        unsafe = instance;
+        invokeCleaner = method;
+    }
+
+    // null once the memory has been handed back
+    private ByteBuffer[] buffers;
+    private LongBuffer[] chunks;
+    private int references;
+
+    public OffHeapStorage(long length) {
+        this(length, new ByteBuffer[OffHeapStorage.chunkCount(length)]);
+
+        for (int c = 0; c < this.buffers.length; c++) {
+            // direct buffers start out zeroed
+            this.buffers[c] = ByteBuffer.allocateDirect(OffHeapStorage.chunkLength(length, c) * Long.BYTES);
+            this.chunks[c] = this.buffers[c].order(ByteOrder.nativeOrder()).asLongBuffer();
+        }
+    }
+
+    private OffHeapStorage(long length, ByteBuffer[] buffers) {
+        super(length);
+
+        this.buffers = buffers;
+        this.chunks = new LongBuffer[buffers.length];
+        this.references = 1;
+    }
+
+    /**
+     * Returns read only storage over length elements of the file starting at position
+     */
+    public static OffHeapStorage map(FileChannel channel, long position, long length) throws IOException {
+        OffHeapStorage storage = new OffHeapStorage(length, new ByteBuffer[OffHeapStorage.chunkCount(length)]);
+
+        for (int c = 0; c < storage.buffers.length; c++) {
+            long offset = position + ((long) c << chunkShift) * Long.BYTES;
+            long size = (long) OffHeapStorage.chunkLength(length, c) * Long.BYTES;
+
+            storage.buffers[c] = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+            storage.chunks[c] = storage.buffers[c].order(ByteOrder.nativeOrder()).asLongBuffer();
+        }
+
+        return storage;
+    }
+
+    private static int chunkCount(long length) {
+        return (int) ((length + chunkSize - 1) >>> chunkShift);
+    }
+
+    private static int chunkLength(long length, int chunk) {
+        return (int) Math.min(chunkSize, length - ((long) chunk << chunkShift));
+    }
+
+    @Override
+    public long get(long index) {
+        return this.chunks[(int) (index >>> chunkShift)].get((int) index & chunkMask);
+    }
+
+    @Override
+    public void read(long from, long[] dst, int offset, int count) {
+        while (count > 0) {
+            int start = (int) from & chunkMask;
+            int n = Math.min(count, chunkSize - start);
+
+            this.chunks[(int) (from >>> chunkShift)].get(start, dst, offset, n);
+
+            from += n;
+            offset += n;
+            count -= n;
+        }
+    }
+
+    @Override
+    public void write(long from, long[] src, int offset, int count) {
+        while (count > 0) {
+            int start = (int) from & chunkMask;
+            int n = Math.min(count, chunkSize - start);
+
+            this.chunks[(int) (from >>> chunkShift)].put(start, src, offset, n);
+
+            from += n;
+            offset += n;
+            count -= n;
+        }
+    }
+
+    @Override
+    public Storage share() {
+        this.references++;
+        return this;
+    }
+
+    @Override
+    public void release() {
+        if (--this.references > 0 || this.buffers == null) {
+            return;
+        }
+
+        ByteBuffer[] freed = this.buffers;
+
+        // drop every path to the memory before it goes, a stray read fails instead of crashing
+        this.buffers = null;
+        this.chunks = null;
+
+        if (invokeCleaner == null) {
+            return;
+        }
+
+        try {
+            for (ByteBuffer buffer : freed) {
+                invokeCleaner.invoke(unsafe, buffer);
+            }
+        } catch (ReflectiveOperationException e) {
+            // left to the collector
+        }
+    }
+}
@@ -0,0 +1,278 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Compressed elements of an ascending vector. The elements are cut into
+ * blocks of 128, every block keeps its first element and the gaps to the
+ * following ones. The gaps are stored less the smallest gap of the block,
+ * bit packed at the width the largest of them needs, e.g. one bit per
+ * element for composites.
+ *
+ * The first element, smallest gap, bit width and word offset of every block
+ * sit in small arrays of their own, so a value is found by a binary search
+ * over the blocks and decoding a single one, and no block needs the one
+ * before it to be decoded.
+ */
+class PackedStorage extends Storage {
+
+    private static final int blockShift = 7;
+    private static final int blockSize = 1 << blockShift;
+    private static final int blockMask = blockSize - 1;
+
+    private static final ThreadLocal<long[]> blockBuffers = ThreadLocal.withInitial(() -> new long[blockSize]);
+
+    // per block skip headers
+    private final long[] firsts;
+    private final long[] bases;
+    private final byte[] widths;
+    private final int[] offsets;
+
+    private final long[] words;
+    private final long last;
+
+    private PackedStorage(long length, long[] firsts, long[] bases, byte[] widths, int[] offsets, long[] words, long last) {
+        super(length);
+        this.firsts = firsts;
+        this.bases = bases;
+        this.widths = widths;
+        this.offsets = offsets;
+        this.words = words;
+        this.last = last;
+    }
+
+    /**
+     * Returns the elements of source compressed, or null when they are not in
+     * ascending order or would not get any smaller
+     */
+    public static PackedStorage pack(Storage source) {
+        final long length = source.length();
+        final int blocks = (int) ((length + blockSize - 1) >>> blockShift);
+
+        final long[] firsts = new long[blocks];
+        final long[] lasts = new long[blocks];
+        final long[] bases = new long[blocks];
+        final byte[] widths = new byte[blocks];
+
+        // pass 1, the gaps of every block decide its width
+        final AtomicBoolean ascending = new AtomicBoolean(true);
+
+        Kernels.forEachBlock(length, blockSize, (first, count) -> {
+            long[] values = blockBuffers.get();
+
+            // one block out of order is enough, the others stop looking
+            for (int b = (int) first; b < first + count && ascending.get(); b++) {
+                int n = PackedStorage.blockLength(length, b);
+                source.read((long) b << blockShift, values, 0, n);
+
+                long smallest = -1L;
+                long largest = 0;
+
+                for (int i = 1; i < n; i++) {
+                    if (values[i] < values[i - 1]) {
+                        ascending.set(false);
+                        return;
+                    }
+
+                    // ascending, so the gap fits unsigned even when the signed difference overflows
+                    long gap = values[i] - values[i - 1];
+                    smallest = (Long.compareUnsigned(gap, smallest) < 0) ? gap : smallest;
+                    largest = (Long.compareUnsigned(gap, largest) > 0) ? gap : largest;
+                }
+
+                firsts[b] = values[0];
+                lasts[b] = values[n - 1];
+                bases[b] = (n > 1) ? smallest : 0;
+                widths[b] = (byte) ((n > 1) ? 64 - Long.numberOfLeadingZeros(largest - smallest) : 0);
+            }
+        });
+
+        if (! ascending.get()) {
+            return null;
+        }
+
+        // blocks start on a word of their own, so they can be packed concurrently
+        final int[] offsets = new int[blocks];
+        long total = 0;
+
+        for (int b = 0; b < blocks; b++) {
+            if (b > 0 && firsts[b] < lasts[b - 1]) {
+                return null;
+            }
+
+            offsets[b] = (int) Math.min(total, Integer.MAX_VALUE);
+            total += ((long) widths[b] * (PackedStorage.blockLength(length, b) - 1) + 63) >>> 6;
+        }
+
+        // the skip headers take about 21 bytes a block on top of the words
+        if (total > Integer.MAX_VALUE - 8 || total + (blocks * 21L) / Long.BYTES >= length) {
+            return null;
+        }
+
+        final long[] words = new long[(int) total];
+
+        // pass 2, pack the gaps
+        Kernels.forEachBlock(length, blockSize, (first, count) -> {
+            long[] values = blockBuffers.get();
+
+            for (int b = (int) first; b < first + count; b++) {
+                int width = widths[b];
+                if (width == 0) {
+                    continue;
+                }
+
+                int n = PackedStorage.blockLength(length, b);
+                source.read((long) b << blockShift, values, 0, n);
+
+                long position = (long) offsets[b] << 6;
+
+                for (int i = 1; i < n; i++, position += width) {
+                    long packed = values[i] - values[i - 1] - bases[b];
+                    int word = (int) (position >>> 6);
+                    int shift = (int) position & 63;
+
+                    words[word] |= packed << shift;
+                    if (shift + width > 64) {
+                        words[word + 1] |= packed >>> (64 - shift);
+                    }
+                }
+            }
+        });
+
+        return new PackedStorage(length, firsts, bases, widths, offsets, words, lasts[blocks - 1]);
+    }
+
+    private static int blockLength(long length, int block) {
+        return (int) Math.min(blockSize, length - ((long) block << blockShift));
+    }
+
+    /**
+     * Returns the i-th packed gap of the block, less the smallest gap
+     */
+    private long packed(int block, int i) {
+        int width = this.widths[block];
+        if (width == 0) {
+            return 0;
+        }
+
+        long position = ((long) this.offsets[block] << 6) + (long) i * width;
+        int word = (int) (position >>> 6);
+        int shift = (int) position & 63;
+
+        long value = this.words[word] >>> shift;
+        if (shift + width > 64) {
+            value |= this.words[word + 1] << (64 - shift);
+        }
+
+        return (width == 64) ? value : value & ((1L << width) - 1);
+    }
+
+    /**
+     * Decodes the first count elements of the block into dst starting at offset
+     */
+    private void decode(int block, long[] dst, int offset, int count) {
+        long value = this.firsts[block];
+        long base = this.bases[block];
+
+        dst[offset] = value;
+        for (int i = 1; i < count; i++) {
+            value += base + this.packed(block, i - 1);
+            dst[offset + i] = value;
+        }
+    }
+
+    @Override
+    public long get(long index) {
+        int block = (int) (index >>> blockShift);
+        int end = (int) index & blockMask;
+
+        long value = this.firsts[block];
+        for (int i = 0; i < end; i++) {
+            value += this.bases[block] + this.packed(block, i);
+        }
+
+        return value;
+    }
+
+    @Override
+    public void read(long from, long[] dst, int offset, int count) {
+        long[] values = blockBuffers.get();
+
+        while (count > 0) {
+            int block = (int) (from >>> blockShift);
+            int start = (int) from & blockMask;
+            int n = Math.min(count, PackedStorage.blockLength(this.length, block) - start);
+
+            if (start == 0) {
+                // whole leading part of the block, straight into place
+                this.decode(block, dst, offset, n);
+            } else {
+                this.decode(block, values, 0, start + n);
+                System.arraycopy(values, start, dst, offset, n);
+            }
+
+            from += n;
+            offset += n;
+            count -= n;
+        }
+    }
+
+    /**
+     * Returns the index of the first element not below value, length when there is none
+     */
+    private long lowerBound(long value) {
+        // last block starting below value, everything before it is smaller too
+        int low = 0;
+        int high = this.firsts.length - 1;
+
+        if (this.firsts[0] >= value) {
+            return 0;
+        }
+
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+
+            if (this.firsts[middle] < value) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        long[] values = blockBuffers.get();
+        int n = PackedStorage.blockLength(this.length, low);
+        this.decode(low, values, 0, n);
+
+        int i = 1;
+        while (i < n && values[i] < value) {
+            i++;
+        }
+
+        return ((long) low << blockShift) + i;
+    }
+
+    @Override
+    public Long sum() {
+        // decoded a few blocks at a time by the kernels, never as a whole
+        return Kernels.sum(this);
+    }
+
+    @Override
+    public Long minimum() {
+        return this.firsts[0];
+    }
+
+    @Override
+    public Long maximum() {
+        return this.last;
+    }
+
+    @Override
+    public Long frequency(long value) {
+        if (value < this.firsts[0] || value > this.last) {
+            return 0L;
+        }
+
+        long end = (value == Long.MAX_VALUE) ? this.length : this.lowerBound(value + 1);
+
+        return end - this.lowerBound(value);
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Pollard's rho with Brent's cycle detection, finds a non trivial factor
+ * of a composite long in roughly n^(1/4) steps.
+ */
+// reference: https://en.wikipedia.org/wiki/Pollard%27s_rho_algorithm#Variants
+// reference: https://maths-people.anu.edu.au/~brent/pd/rpb051i.pdf
+class PollardRho {
+
+    // how many differences are multiplied together before each gcd
+    private static final int batchSize = 128;
+
+    /**
+     * Returns a non trivial factor of the composite number
+     */
+    public static long factor(long number) {
+        if ((number & 1) == 0) {
+            return 2;
+        }
+
+        // the montgomery context from miller rabin doubles as our modular arithmetic
+        MillerRabin mont = new MillerRabin(number);
+
+        for (long c = 1; ; c++) {
+            long d = PollardRho.brent(mont, number, mont.toMontgomery(c % number));
+
+            if (d != number) {
+                return d;
+            }
+        }
+    }
+
+    /**
+     * Runs one walk of x -> x^2 + c, returns a factor or the number itself when the walk fails
+     */
+    private static long brent(MillerRabin mont, long number, long c) {
+        long y = mont.toMontgomery(2);
+        long x = y;
+        long ys = y;
+        long q = mont.toMontgomery(1);
+        long g = 1;
+
+        for (long r = 1; g == 1; r <<= 1) {
+            x = y;
+
+            for (long i = 0; i < r; i++) {
+                y = PollardRho.step(mont, number, y, c);
+            }
+
+            for (long k = 0; k < r && g == 1; k += batchSize) {
+                ys = y;
+
+                for (long i = 0; i < Math.min(batchSize, r - k); i++) {
+                    y = PollardRho.step(mont, number, y, c);
+                    q = mont.multiply(q, Math.abs(x - y));
+                }
+
+                g = PollardRho.gcd(q, number);
+            }
+        }
+
+        // the batch overshot, walk it again one gcd at a time
+        if (g == number) {
+            do {
+                ys = PollardRho.step(mont, number, ys, c);
+                g = PollardRho.gcd(Math.abs(x - ys), number);
+            } while (g == 1);
+        }
+
+        return g;
+    }
+
+    /**
+     * Returns y^2 + c in montgomery form
+     */
+    private static long step(MillerRabin mont, long number, long y, long c) {
+        long next = mont.multiply(y, y) + c;
+        return (Long.compareUnsigned(next, number) >= 0) ? next - number : next;
+    }
+
+    /**
+     * Binary gcd of two non negative longs
+     */
+    public static long gcd(long a, long b) {
+        if (a == 0) {
+            return b;
+        }
+
+        if (b == 0) {
+            return a;
+        }
+
+        int shift = Long.numberOfTrailingZeros(a | b);
+        a >>>= Long.numberOfTrailingZeros(a);
+
+        do {
+            b >>>= Long.numberOfTrailingZeros(b);
+
+            if (a > b) {
+                long t = a;
+                a = b;
+                b = t;
+            }
+
+            b -= a;
+        } while (b != 0);
+
+        return a << shift;
+    }
+}
@@ -0,0 +1,170 @@
+import java.util.Arrays;
+
+/**
+ * Least significant digit radix sort for longs, 11 bits a digit, held in a
+ * single array or in the chunks of a ChunkedStorage.
+ *
+ * Every pass counts the digits of each block of elements concurrently, works
+ * out where each block writes every digit, then has the blocks scatter their
+ * elements into a scratch copy concurrently, no two blocks ever writing the
+ * same place. The sign bit is flipped so negative values come first. Digits
+ * that are the same for every element are skipped, elements 0 - 100 take a
+ * single pass, any long at most six.
+ */
+final class RadixSort {
+
+    private static final int digitBits = 11;
+    private static final int radix = 1 << digitBits;
+    private static final int digitMask = radix - 1;
+
+    private static final int chunkShift = Integer.numberOfTrailingZeros(ChunkedStorage.chunkSize);
+    private static final int chunkMask = ChunkedStorage.chunkSize - 1;
+
+    // blocks smaller than this are not worth a thread
+    private static final int minBlock = 64 * 1024;
+    // a few blocks per thread so uneven ones still balance
+    private static final int blocksPerThread = 4;
+
+    private RadixSort() {
+    }
+
+    /**
+     * Sorts the array, which may be no longer than a chunk
+     */
+    public static void sort(long[] elements) {
+        RadixSort.sort(new long[][] { elements }, elements.length);
+    }
+
+    /**
+     * Sorts length elements held in chunks of ChunkedStorage.chunkSize,
+     * element i in chunk i / chunkSize
+     */
+    public static void sort(long[][] chunks, long length) {
+        if (length < 2) {
+            return;
+        }
+
+        final int blocks = (int) Math.max(1, Math.min((long) Vector.rtThreadCount * blocksPerThread, length / minBlock));
+        final long first = chunks[0][0];
+
+        // bits in which any two elements differ
+        final long[] differs = new long[blocks];
+
+        Kernels.forEachTask(blocks, b ->
+            RadixSort.segments(chunks, RadixSort.start(length, blocks, b), RadixSort.start(length, blocks, b + 1),
+                    (chunk, from, to) -> {
+                        long differ = 0;
+                        for (int i = from; i < to; i++) {
+                            differ |= chunk[i] ^ first;
+                        }
+                        differs[b] |= differ;
+                    }));
+
+        long varying = 0;
+        for (long differ : differs) {
+            varying |= differ;
+        }
+
+        if (varying == 0) {
+            return;
+        }
+
+        long[][] source = chunks;
+        long[][] target = new long[chunks.length][];
+        for (int c = 0; c < chunks.length; c++) {
+            target[c] = new long[chunks[c].length];
+        }
+
+        final long[][] offsets = new long[blocks][radix];
+
+        for (int shift = 0; shift < Long.SIZE; shift += digitBits) {
+            if (((varying >>> shift) & digitMask) == 0) {
+                continue;
+            }
+
+            RadixSort.pass(source, target, length, blocks, offsets, shift);
+
+            long[][] swap = source;
+            source = target;
+            target = swap;
+        }
+
+        // an odd number of passes leaves the result in the scratch copy
+        if (source != chunks) {
+            final long[][] sorted = source;
+
+            Kernels.forEachBlock(length, ChunkedStorage.chunkSize, (firstChunk, count) -> {
+                for (int c = (int) firstChunk; c < firstChunk + count; c++) {
+                    System.arraycopy(sorted[c], 0, chunks[c], 0, chunks[c].length);
+                }
+            });
+        }
+    }
+
+    /**
+     * Moves every element from source to its place in target by the digit at shift
+     */
+    private static void pass(long[][] source, long[][] target, long length, int blocks, long[][] offsets, int shift) {
+        // count the digits of every block
+        Kernels.forEachTask(blocks, b -> {
+            long[] counts = offsets[b];
+            Arrays.fill(counts, 0);
+
+            RadixSort.segments(source, RadixSort.start(length, blocks, b), RadixSort.start(length, blocks, b + 1),
+                    (chunk, from, to) -> {
+                        for (int i = from; i < to; i++) {
+                            counts[RadixSort.digit(chunk[i], shift)]++;
+                        }
+                    });
+        });
+
+        // digit by digit, block by block, so equal digits keep their order
+        long position = 0;
+        for (int d = 0; d < radix; d++) {
+            for (int b = 0; b < blocks; b++) {
+                long count = offsets[b][d];
+                offsets[b][d] = position;
+                position += count;
+            }
+        }
+
+        Kernels.forEachTask(blocks, b -> {
+            long[] next = offsets[b];
+
+            RadixSort.segments(source, RadixSort.start(length, blocks, b), RadixSort.start(length, blocks, b + 1),
+                    (chunk, from, to) -> {
+                        for (int i = from; i < to; i++) {
+                            long value = chunk[i];
+                            long index = next[RadixSort.digit(value, shift)]++;
+
+                            target[(int) (index >>> chunkShift)][(int) index & chunkMask] = value;
+                        }
+                    });
+        });
+    }
+
+    private static int digit(long value, int shift) {
+        return (int) (((value ^ Long.MIN_VALUE) >>> shift) & digitMask);
+    }
+
+    private static long start(long length, int blocks, int block) {
+        return length / blocks * block + Math.min(block, length % blocks);
+    }
+
+    private interface Segment {
+        void visit(long[] chunk, int from, int to);
+    }
+
+    /**
+     * Visits [from, to) as runs within single chunks
+     */
+    private static void segments(long[][] chunks, long from, long to, Segment segment) {
+        while (from < to) {
+            int start = (int) from & chunkMask;
+            int end = (int) Math.min(chunks[(int) (from >>> chunkShift)].length, start + (to - from));
+
+            segment.visit(chunks[(int) (from >>> chunkShift)], start, end);
+            from += end - start;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Answers sum, minimum and maximum of any range of a vector's elements
+ * without visiting the range. Each half is built on the first question
+ * that needs it.
+ *
+ * Sums come from prefix sums, element i holding the sum of the i elements
+ * before it, so a range is the difference of two of them. They are built
+ * by a parallel scan: the sum of every block, then where every block
+ * starts, then the blocks filled in concurrently.
+ *
+ * Minimum and maximum come from the extrema of blocks of 256 elements and
+ * a sparse table over those, level k holding the extremum of 2^k blocks
+ * from each one on. A range takes two table lookups for its whole blocks
+ * and a scan of at most two partial ones, a few KB of memory per million
+ * elements.
+ */
+class RangeIndex {
+
+    // elements per block of the prefix sum scan
+    private static final int scanBlock = 1 << 16;
+    // elements per block of the extrema
+    private static final int blockShift = 8;
+    private static final int blockSize = 1 << blockShift;
+
+    private static final ThreadLocal<long[]> scanBuffers = ThreadLocal.withInitial(() -> new long[scanBlock]);
+
+    // null until a sum was asked
+    private Storage prefix;
+    // null until a minimum or maximum was asked
+    private long[][] minima;
+    private long[][] maxima;
+
+    /**
+     * Returns the sum of elements [from, to)
+     */
+    public long sum(Storage elements, long from, long to) {
+        if (this.prefix == null) {
+            this.prefix = RangeIndex.prefixSums(elements);
+        }
+
+        // sums that wrapped around still differ by the right amount
+        return this.prefix.get(to) - this.prefix.get(from);
+    }
+
+    /**
+     * Returns the smallest of elements [from, to)
+     */
+    public long minimum(Storage elements, long from, long to) {
+        if (this.minima == null) {
+            this.buildExtrema(elements);
+        }
+
+        return RangeIndex.extremum(elements, this.minima, from, to, Math::min);
+    }
+
+    /**
+     * Returns the largest of elements [from, to)
+     */
+    public long maximum(Storage elements, long from, long to) {
+        if (this.maxima == null) {
+            this.buildExtrema(elements);
+        }
+
+        return RangeIndex.extremum(elements, this.maxima, from, to, Math::max);
+    }
+
+    /**
+     * Hands back the memory of the prefix sums
+     */
+    public void release() {
+        if (this.prefix != null) {
+            this.prefix.release();
+            this.prefix = null;
+        }
+    }
+
+    private static Storage prefixSums(Storage elements) {
+        final long length = elements.length();
+        final int blocks = (int) ((length + scanBlock - 1) / scanBlock);
+        final long[] starts = new long[blocks + 1];
+
+        // the sum of every block
+        Kernels.forEachBlock(length, scanBlock, (first, count) -> {
+            long[] buffer = scanBuffers.get();
+
+            for (long b = first; b < first + count; b++) {
+                int n = (int) Math.min(scanBlock, length - b * scanBlock);
+
+                elements.read(b * scanBlock, buffer, 0, n);
+                starts[(int) b + 1] = Kernels.sum(buffer, 0, n);
+            }
+        });
+
+        // where every block starts
+        for (int b = 1; b <= blocks; b++) {
+            starts[b] += starts[b - 1];
+        }
+
+        final Storage prefix = Storage.allocate(length + 1);
+
+        Kernels.forEachBlock(length, scanBlock, (first, count) -> {
+            long[] buffer = scanBuffers.get();
+
+            for (long b = first; b < first + count; b++) {
+                int n = (int) Math.min(scanBlock, length - b * scanBlock);
+                long sum = starts[(int) b];
+
+                elements.read(b * scanBlock, buffer, 0, n);
+                for (int i = 0; i < n; i++) {
+                    long value = buffer[i];
+                    buffer[i] = sum;
+                    sum += value;
+                }
+
+                prefix.write(b * scanBlock, buffer, 0, n);
+            }
+        });
+
+        prefix.write(length, new long[] { starts[blocks] }, 0, 1);
+
+        return prefix;
+    }
+
+    private void buildExtrema(Storage elements) {
+        final long length = elements.length();
+        final int blocks = (int) ((length + blockSize - 1) >>> blockShift);
+        final long[] minimum = new long[blocks];
+        final long[] maximum = new long[blocks];
+
+        Kernels.forEachBlock(length, blockSize, (first, count) -> {
+            long[] buffer = scanBuffers.get();
+
+            for (long b = first; b < first + count; b++) {
+                int n = (int) Math.min(blockSize, length - (b << blockShift));
+
+                elements.read(b << blockShift, buffer, 0, n);
+                minimum[(int) b] = Kernels.minimum(buffer, 0, n);
+                maximum[(int) b] = Kernels.maximum(buffer, 0, n);
+            }
+        });
+
+        this.minima = RangeIndex.sparseTable(minimum, Math::min);
+        this.maxima = RangeIndex.sparseTable(maximum, Math::max);
+    }
+
+    private static long[][] sparseTable(long[] blocks, LongBinaryOperator combine) {
+        int levels = 32 - Integer.numberOfLeadingZeros(blocks.length);
+        long[][] table = new long[levels][];
+
+        table[0] = blocks;
+
+        for (int k = 1; k < levels; k++) {
+            long[] below = table[k - 1];
+            long[] level = new long[blocks.length - (1 << k) + 1];
+            int half = 1 << (k - 1);
+
+            for (int i = 0; i < level.length; i++) {
+                level[i] = combine.applyAsLong(below[i], below[i + half]);
+            }
+
+            table[k] = level;
+        }
+
+        return table;
+    }
+
+    private static long extremum(Storage elements, long[][] table, long from, long to, LongBinaryOperator combine) {
+        int first = (int) (from >>> blockShift);
+        int last = (int) ((to - 1) >>> blockShift);
+
+        if (first == last) {
+            return RangeIndex.scan(elements, from, to, combine);
+        }
+
+        long result = combine.applyAsLong(
+                RangeIndex.scan(elements, from, (long) (first + 1) << blockShift, combine),
+                RangeIndex.scan(elements, (long) last << blockShift, to, combine));
+
+        // the whole blocks in between, covered by two overlapping runs of 2^k blocks
+        if (last - first > 1) {
+            int low = first + 1;
+            int high = last - 1;
+            int k = 31 - Integer.numberOfLeadingZeros(high - low + 1);
+
+            result = combine.applyAsLong(result, combine.applyAsLong(table[k][low], table[k][high - (1 << k) + 1]));
+        }
+
+        return result;
+    }
+
+    private static long scan(Storage elements, long from, long to, LongBinaryOperator combine) {
+        // never more than a block, so the scan buffer of the thread always holds it
+        long[] buffer = scanBuffers.get();
+        int n = (int) (to - from);
+        elements.read(from, buffer, 0, n);
+
+        long result = buffer[0];
+        for (int i = 1; i < n; i++) {
+            result = combine.applyAsLong(result, buffer[i]);
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,156 @@
+import java.util.Arrays;
+
+/**
+ * Segmented sieve of Eratosthenes, only sieves the requested window
+ * using the base primes up to the square root of the end of the window.
+ */
+// reference: https://en.wikipedia.org/wiki/Sieve_of_Eratosthenes#Segmented_sieve
+class SegmentedSieve {
+
+    // window size that comfortably fits in the L2 cache
+    public static final int segmentSize = 1024 * 256;
+
+    // base primes above this would need more memory than the window is worth
+    public static final long baseLimitMax = 1024 * 1024 * 64;
+
+    private static int[] basePrimes = new int[0];
+    private static long baseLimit = 1;
+
+    private final boolean[] composite;
+    private long low;
+    private int span;
+
+    public SegmentedSieve() {
+        this.composite = new boolean[segmentSize];
+        this.low = 0;
+        this.span = 0;
+    }
+
+    /**
+     * Checks if the window [start, end) can be sieved with a reasonable base prime table
+     */
+    public static boolean canSieve(long start, long end) {
+        return start >= 0 && end > start && SegmentedSieve.isqrt(end) < baseLimitMax;
+    }
+
+    /**
+     * Estimates how far past start we need to look to find count primes
+     */
+    // prime number theorem, the gap between primes near x averages ln(x)
+    public static long estimatePrimeSpan(long start, long count) {
+        double x = Math.max((double) start, 16.0);
+        double gap = Math.log(x + (double) count * Math.log(x));
+
+        return (long) ((double) count * gap * 1.1) + 64;
+    }
+
+    /**
+     * Returns the integer square root of the number
+     */
+    public static long isqrt(long number) {
+        // largest root whose square still fits in a long
+        final long maxRoot = 3037000499L;
+        long root = Math.min((long) Math.sqrt((double) number), maxRoot);
+
+        while (root * root > number) {
+            root--;
+        }
+
+        while (root < maxRoot && (root + 1) * (root + 1) <= number) {
+            root++;
+        }
+
+        return root;
+    }
+
+    /**
+     * Returns all primes up to limit, grows the shared table when needed
+     */
+    public static synchronized int[] basePrimes(long limit) {
+        if (limit <= SegmentedSieve.baseLimit) {
+            return SegmentedSieve.basePrimes;
+        }
+
+        // grow geometrically so a walk across many windows only rebuilds a handful of times
+        int size = (int) Math.min(Math.max(limit, SegmentedSieve.baseLimit * 2), baseLimitMax);
+        boolean[] composite = new boolean[size + 1];
+        int[] primes = new int[Math.max(16, (int) (1.25506 * size / Math.log(Math.max(size, 2))) + 16)];
+        int count = 0;
+
+        for (int i = 2; i <= size; i++) {
+            if (! composite[i]) {
+                primes[count++] = i;
+
+                for (long j = (long) i * i; j <= size; j += i) {
+                    composite[(int) j] = true;
+                }
+            }
+        }
+
+        SegmentedSieve.basePrimes = Arrays.copyOf(primes, count);
+        SegmentedSieve.baseLimit = size;
+
+        return SegmentedSieve.basePrimes;
+    }
+
+    /**
+     * Sieves the window [low, low + span), span is limited to segmentSize
+     */
+    public void sieve(long low, int span) {
+        this.low = low;
+        this.span = Math.min(span, segmentSize);
+
+        final long high = low + this.span;
+        final int[] primes = SegmentedSieve.basePrimes(SegmentedSieve.isqrt(high - 1));
+
+        Arrays.fill(this.composite, 0, this.span, false);
+
+        // 0 and 1 are neither prime nor composite, flag them so they are never picked as primes
+        for (long n = low; n < 2 && n < high; n++) {
+            this.composite[(int) (n - low)] = true;
+        }
+
+        for (int p : primes) {
+            long square = (long) p * p;
+
+            if (square >= high) {
+                break;
+            }
+
+            // first multiple of p inside the window, never below p*p
+            long first = Math.max(square, ((low + p - 1) / p) * p);
+
+            for (long j = first - low; j < this.span; j += p) {
+                this.composite[(int) j] = true;
+            }
+        }
+    }
+
+    /**
+     * Returns the start of the current window
+     */
+    public long getLow() {
+        return this.low;
+    }
+
+    /**
+     * Returns the length of the current window
+     */
+    public int getSpan() {
+        return this.span;
+    }
+
+    /**
+     * Returns whether low + offset is prime
+     */
+    public boolean isPrime(int offset) {
+        return ! this.composite[offset];
+    }
+
+    /**
+     * Returns whether low + offset is composite
+     */
+    public boolean isComposite(int offset) {
+        return this.composite[offset] && this.low + offset > 1;
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Elements of an arithmetic sequence, element i is start + step * i.
+ * A uniform vector is simply a sequence with a step of 0.
+ *
+ * Elements wrap around on overflow exactly like the filled array would,
+ * questions whose closed form assumes an ordered sequence are only answered
+ * when no element overflows.
+ */
+class SequenceStorage extends Storage {
+
+    private final long start;
+    private final long step;
+    // whether start + step * (length - 1) fits in a long, i.e. the elements really are ordered
+    private final boolean exact;
+
+    public SequenceStorage(long length, long start, long step) {
+        super(length);
+        this.start = start;
+        this.step = step;
+        this.exact = SequenceStorage.fits(start, step, length);
+    }
+
+    private static boolean fits(long start, long step, long length) {
+        try {
+            Math.addExact(start, Math.multiplyExact(step, length - 1));
+            return true;
+        } catch (ArithmeticException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public long get(long index) {
+        return this.start + (this.step * index);
+    }
+
+    @Override
+    public void read(long from, long[] dst, int offset, int count) {
+        long value = this.get(from);
+
+        for (int i = 0; i < count; i++, value += this.step) {
+            dst[offset + i] = value;
+        }
+    }
+
+    @Override
+    public Long sum() {
+        // n * start + step * n(n-1)/2, whichever of n and n - 1 is even is
+        // halved before multiplying, so only the multiplications wrap and
+        // they wrap the same way the summing loop does
+        long n = this.length;
+        long pairs = (n % 2 == 0) ? (n / 2) * (n - 1) : n * ((n - 1) / 2);
+        return (n * this.start) + (this.step * pairs);
+    }
+
+    @Override
+    public Long minimum() {
+        if (! this.exact) {
+            return null;
+        }
+
+        return (this.step >= 0) ? this.get(0) : this.get(this.length - 1);
+    }
+
+    @Override
+    public Long maximum() {
+        if (! this.exact) {
+            return null;
+        }
+
+        return (this.step >= 0) ? this.get(this.length - 1) : this.get(0);
+    }
+
+    @Override
+    public Long frequency(long value) {
+        if (this.step == 0) {
+            return (value == this.start) ? this.length : 0L;
+        }
+
+        if (! this.exact || value < this.minimum() || value > this.maximum()) {
+            return this.exact ? 0L : null;
+        }
+
+        // both lie inside the range of the sequence, so the distance fits unless it spans all of it
+        try {
+            long distance = Math.subtractExact(value, this.start);
+            return (distance % this.step == 0) ? 1L : 0L;
+        } catch (ArithmeticException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Storage add(long scalar) {
+        return new SequenceStorage(this.length, this.start + scalar, this.step);
+    }
+
+    @Override
+    public Storage multiply(long scalar) {
+        return new SequenceStorage(this.length, this.start * scalar, this.step * scalar);
+    }
+
+    @Override
+    public Storage add(Storage other) {
+        if (! (other instanceof SequenceStorage)) {
+            return null;
+        }
+
+        SequenceStorage sequence = (SequenceStorage) other;
+        return new SequenceStorage(this.length, this.start + sequence.start, this.step + sequence.step);
+    }
+
+    @Override
+    public Storage shift(long amount) {
+        // a uniform vector looks the same however far it is shifted
+        return (this.step == 0) ? this : super.shift(amount);
+    }
+
+    @Override
+    public Storage reverse() {
+        return new SequenceStorage(this.length, this.get(this.length - 1), -this.step);
+    }
+}
@@ -0,0 +1,304 @@
+import java.util.Arrays;
+
+/**
+ * Backing store for the elements of a vector. Plain vectors keep their
+ * elements in an array (or off the heap), others work them out on demand
+ * from a few numbers and are only stored once an operation really needs it.
+ *
+ * The closed form methods return null whenever answering them would mean
+ * visiting every element, the vector then falls back to its usual loops.
+ * Reordering never copies, it returns a view onto the same storage.
+ *
+ * Elements are addressed by a long index, a vector longer than a single
+ * array can hold is split over chunks.
+ */
+abstract class Storage {
+
+    // elements per block when copying between storages
+    private static final int copyBlock = 4096;
+    // the longest array the runtime hands out
+    private static final int maxArray = Integer.MAX_VALUE - 8;
+
+    // where new vectors keep their elements, chosen once at start up
+    private static boolean offHeap = false;
+    // whether ascending vectors are kept compressed
+    private static boolean compressed = false;
+
+    protected final long length;
+
+    Storage(long length) {
+        this.length = length;
+    }
+
+    /**
+     * Keeps the elements of new vectors outside the heap from now on
+     */
+    public static void setOffHeap(boolean offHeap) {
+        Storage.offHeap = offHeap;
+    }
+
+    /**
+     * Returns whether new vectors keep their elements outside the heap
+     */
+    public static boolean isOffHeap() {
+        return Storage.offHeap;
+    }
+
+    /**
+     * Keeps the elements of ascending vectors compressed from now on
+     */
+    public static void setCompressed(boolean compressed) {
+        Storage.compressed = compressed;
+    }
+
+    /**
+     * Returns whether ascending vectors keep their elements compressed
+     */
+    public static boolean isCompressed() {
+        return Storage.compressed;
+    }
+
+    /**
+     * Returns zeroed storage for length elements, on or off the heap as configured
+     */
+    public static Storage allocate(long length) {
+        if (Storage.offHeap) {
+            return new OffHeapStorage(length);
+        }
+
+        // one big allocation is hard to come by in a fragmented heap, chunks are not
+        return (length > ChunkedStorage.chunkSize) ? new ChunkedStorage(length) : new ArrayStorage(new long[(int) length]);
+    }
+
+    /**
+     * Returns storage holding the elements, the array itself on the heap or a copy off it
+     */
+    public static Storage of(long[] elements) {
+        if (! Storage.offHeap) {
+            return new ArrayStorage(elements);
+        }
+
+        Storage storage = new OffHeapStorage(elements.length);
+        storage.write(0, elements, 0, elements.length);
+
+        return storage;
+    }
+
+    /**
+     * Returns a stored copy of source, on or off the heap as configured,
+     * working out closed forms and deferred expressions on the way
+     */
+    public static Storage copyOf(Storage source) {
+        final long length = source.length();
+
+        if (! Storage.offHeap && length <= ChunkedStorage.chunkSize) {
+            return new ArrayStorage(source.toArray());
+        }
+
+        final Storage copy = Storage.allocate(length);
+
+        Storage.copy(source, copy);
+
+        return copy;
+    }
+
+    /**
+     * Copies all elements of source into target, concurrently
+     */
+    private static void copy(Storage source, Storage target) {
+        Kernels.forEach(source.length(), (from, count) -> {
+            long[] buffer = new long[Math.min(copyBlock, count)];
+
+            for (int done = 0; done < count; done += buffer.length) {
+                int n = Math.min(buffer.length, count - done);
+
+                source.read(from + done, buffer, 0, n);
+                target.write(from + done, buffer, 0, n);
+            }
+        });
+    }
+
+    /**
+     * Returns a stored copy of source in ascending order, on or off the heap as configured
+     */
+    public static Storage sortedCopyOf(Storage source) {
+        final long length = source.length();
+
+        if (length <= ChunkedStorage.chunkSize) {
+            long[] sorted = source.toArray();
+
+            if (sorted.length > (75*1000)) {
+                RadixSort.sort(sorted);
+            } else {
+                Arrays.sort(sorted);
+            }
+
+            return Storage.of(sorted);
+        }
+
+        // too long for one array, radix sorted in chunks on the heap
+        ChunkedStorage sorted = new ChunkedStorage(length);
+
+        Storage.copy(source, sorted);
+        RadixSort.sort(sorted.chunks(), length);
+
+        return Storage.isOffHeap() ? Storage.copyOf(sorted) : sorted;
+    }
+
+    /**
+     * Returns the number of elements
+     */
+    public long length() {
+        return this.length;
+    }
+
+    /**
+     * Returns the element at the index
+     */
+    public abstract long get(long index);
+
+    /**
+     * Copies count elements starting at from into dst starting at offset
+     */
+    public void read(long from, long[] dst, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            dst[offset + i] = this.get(from + i);
+        }
+    }
+
+    /**
+     * Copies count elements from src starting at offset into the storage starting at from
+     */
+    public void write(long from, long[] src, int offset, int count) {
+        throw new UnsupportedOperationException("storage is read only");
+    }
+
+    /**
+     * Returns the backing array when the elements are held in one, null otherwise
+     */
+    public long[] array() {
+        return null;
+    }
+
+    /**
+     * Returns the backing arrays in order when the elements are held in heap
+     * arrays, null otherwise. Work can be split along the chunks.
+     */
+    public long[][] chunks() {
+        long[] elements = this.array();
+        return (elements != null) ? new long[][] { elements } : null;
+    }
+
+    /**
+     * Marks the storage as read by one more vector and returns it, no vector
+     * writes to storage another one reads
+     */
+    public Storage share() {
+        return this;
+    }
+
+    /**
+     * Called once by every vector that stops using the storage, memory that
+     * no vector uses any more is handed back straight away
+     */
+    public void release() {
+    }
+
+    /**
+     * Returns whether the elements are the result of operations not carried out yet
+     */
+    public boolean isDeferred() {
+        return false;
+    }
+
+    /**
+     * Returns a new array holding every element
+     */
+    public long[] toArray() {
+        long[] elements = new long[this.arrayLength()];
+        this.read(0, elements, 0, elements.length);
+        return elements;
+    }
+
+    /**
+     * Returns the length as an array length, failing when no single array can hold the elements
+     */
+    protected int arrayLength() {
+        if (this.length > maxArray) {
+            throw new UnsupportedOperationException("too many elements for a single array");
+        }
+
+        return (int) this.length;
+    }
+
+    /**
+     * Returns the sum of the elements without visiting them, or null
+     */
+    public Long sum() {
+        return null;
+    }
+
+    /**
+     * Returns the smallest element without visiting them all, or null
+     */
+    public Long minimum() {
+        return null;
+    }
+
+    /**
+     * Returns the largest element without visiting them all, or null
+     */
+    public Long maximum() {
+        return null;
+    }
+
+    /**
+     * Returns how often the value occurs without visiting every element, or null
+     */
+    public Long frequency(long value) {
+        return null;
+    }
+
+    /**
+     * Returns storage with scalar added to every element without computing them, or null
+     */
+    public Storage add(long scalar) {
+        return null;
+    }
+
+    /**
+     * Returns storage with every element multiplied by scalar without computing them, or null
+     */
+    public Storage multiply(long scalar) {
+        return null;
+    }
+
+    /**
+     * Returns storage holding the element wise sum with other without computing it, or null
+     */
+    public Storage add(Storage other) {
+        return null;
+    }
+
+    /**
+     * Returns storage with the elements in reverse order without copying them
+     */
+    public Storage reverse() {
+        return ViewStorage.reverse(this);
+    }
+
+    /**
+     * Returns storage with the elements moved right by amount, wrapping around, without copying them
+     */
+    public Storage shift(long amount) {
+        return ViewStorage.shift(this, amount);
+    }
+
+    /**
+     * Returns storage holding the same elements in any order, for questions
+     * the order makes no difference to, e.g. what a rotated view looks at
+     */
+    public Storage unordered() {
+        return this;
+    }
+}
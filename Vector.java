@@ -1,4 +1,5 @@
-import java.util.stream.LongStream;
+import java.nio.LongBuffer;
+import java.util.function.LongUnaryOperator;
 import java.util.*;
 
 public class Vector {
@@ -8,9 +9,12 @@ public class Vector {
     private Long median;
     private Long minimum;
     private Long maximum;
-
-    public static Long lastMode;
-    public static Long lastSum;
+    // number of distinct values
+    private Long distinct;
+    // answers frequency questions once the first one was asked, null before
+    private LongUnaryOperator frequencies;
+    // answers questions about ranges of elements once the first one was asked, null before
+    private RangeIndex ranges;
 
     // is sorted
     private boolean stable;
@@ -20,8 +24,9 @@ public class Vector {
     private boolean uniform;
     private boolean random;
 
-    private final int length;
-    private final long[] elements;
+    private final long length;
+    // arrays, or closed forms that are only turned into arrays when needed
+    private Storage storage;
 
     // prime and pq cache size
     public static final int cacheLimitPr = 1024 * 1024 * 5;
@@ -37,15 +42,32 @@ public class Vector {
     public static final int cacheLimitAb = 1 * 1500 * 1000;
     public static int cacheSizeAb = cacheLimitAb;
 
-    public static Integer rlength;
+    public static Long rlength;
+
+    // our caches, one bit per odd number, set = composite / set = semiprime
+    public static BitSieve primeCache;
+    public static BitSieve pqCache;
+    // sum of the proper divisors of every value
+    public static LongBuffer abundantCache;
 
-    // our caches
-    public static boolean[] primeCache;
-    public static boolean[] pqCache;
-    public static long[] abundantCache;
+    // small factors are stripped by trial division before falling back to pollard rho
+    public static final int smallFactorLimit = 1 << 12;
 
     public static final int rtThreadCount = Runtime.getRuntime().availableProcessors();
 
+    // values per parallel cache segment, a multiple of BitSieve.valuesPerWord so
+    // no two segments ever share a word, 8k words fits comfortably in L2
+    public static final int cacheSegment = BitSieve.valuesPerWord * 8192;
+
+    // sieve buffers are big, so every pool thread keeps its own
+    private static final ThreadLocal<FactorSieve> factorSieves = ThreadLocal.withInitial(FactorSieve::new);
+    private static final ThreadLocal<SegmentedSieve> segmentedSieves = ThreadLocal.withInitial(SegmentedSieve::new);
+
+    // elements per block when storage that is not a plain array is read out
+    private static final int readBlock = 4096;
+    // the frequency index counts at most this many distinct values, past it every question is a scan
+    private static final int frequencyLimit = 1 << 20;
+
     // ===========================================================================
     // INITIALIZATION
     // ===========================================================================
@@ -54,13 +76,24 @@ public class Vector {
      * Constructs new vector with the given
      * length and all elements set to zero.
      */
-    public Vector(int length) {
+    public Vector(long length) {
+
+        this(length, Storage.allocate(length));
+    }
+
+    /**
+     * Constructs new vector over the given storage.
+     */
+    private Vector(long length, Storage storage) {
 
         this.sum = null;
         this.mode = null;
         this.median = null;
         this.minimum = null;
         this.maximum = null;
+        this.distinct = null;
+        this.frequencies = null;
+        this.ranges = null;
 
         this.uniform = false;
         this.stable = false;
@@ -68,18 +101,18 @@ public class Vector {
         this.random = false;
 
         this.length = length;
-        this.elements = new long[length];
+        this.storage = storage;
 
         Vector.setRange(length);
     }
 
-    public static void setRange(int value) {
+    public static void setRange(long value) {
         if (Vector.rlength == null) {
             Vector.rlength = value;
         }
     }
 
-    public static int getRange() {
+    public static long getRange() {
         return (Vector.rlength == null) ? 0 : Vector.rlength;
     }
 
@@ -94,7 +127,11 @@ public class Vector {
      * Gets the prime flag from our cache
      */
     public static boolean getStateFromPrimeCache(long number) {
-        return ! Vector.primeCache[(int) number];
+        if ((number & 1) == 0) {
+            return number == 2;
+        }
+
+        return ! Vector.primeCache.get(number);
     }
 
     /**
@@ -119,7 +156,7 @@ public class Vector {
      * Compares the stored sum to the number in our cache
      */
     public static boolean getStateFromAbundantCache(long number) {
-        return Vector.abundantCache[(int)number] > number;
+        return Vector.abundantCache.get((int)number) > number;
     }
 
     /**
@@ -130,10 +167,6 @@ public class Vector {
             return Vector.getStateFromAbundantCache(number);
         }
 
-        if (Vector.primeCache == null) {
-            Vector.initializePrimeCache(number, Vector.rlength);
-        }
-
         return Vector.isAbundant(number);
     }
 
@@ -148,7 +181,12 @@ public class Vector {
      * Returns the pq flag from the cache, true = is semiprime, false = not
      */
     public static boolean getStateFromPQCache(long number) {
-        return Vector.pqCache[(int) number];
+        // the only even semiprimes are 2p, so ask the prime cache about the other half
+        if ((number & 1) == 0) {
+            return Vector.getStateFromPrimeCache(number >>> 1);
+        }
+
+        return Vector.pqCache.get(number);
     }
 
 
@@ -167,50 +205,101 @@ public class Vector {
     /**
      * This does the heavy lifting and initalizes the abundant cache
      */
-    public static void initializeAbundantCache(long start, int length) {
-        long capacity = (((start + ((long)length / 5)) / (500 * 1000))+1) * (500 * 1000);
+    public static void initializeAbundantCache(long start, long length) {
+        long capacity = (((start + (length / 5)) / (500 * 1000))+1) * (500 * 1000);
 
         // a rough average for abundants is 1 found every 4-6 values
         if ((int)capacity < Vector.cacheSizeAb && Vector.abundantCache != null) {
             return;
         }
 
-        Vector.cacheSizeAb = Math.min( Math.max(Vector.cacheSizeAb, (int)capacity), Vector.cacheMaxAb );
-        Vector.abundantCache = new long[Vector.cacheSizeAb+1];
+        int size = Math.min( Math.max(Vector.cacheSizeAb, (int)capacity), Vector.cacheMaxAb );
 
-        for (long i = 2; i <= Vector.cacheSizeAb; i++) {
-            for (long j = i*2; j <= Vector.cacheSizeAb; j += i) {
-                Vector.abundantCache[(int) j] += i;
-            }
+        // a previous run may have left a big enough cache on disk
+        CacheStore.Mapped mapped = CacheStore.load(CacheStore.kindAbundant);
+        if (mapped != null && mapped.limit >= size && mapped.words.limit() == mapped.limit + 1) {
+            Vector.cacheSizeAb = (int) mapped.limit;
+            Vector.abundantCache = mapped.words;
+            return;
         }
+
+        Vector.cacheSizeAb = size;
+        Vector.abundantCache = LongBuffer.wrap(new long[Vector.cacheSizeAb+1]);
+
+        final LongBuffer cache = Vector.abundantCache;
+        final int segments = (size / FactorSieve.segmentSize) + 1;
+
+        // windows are independent, each thread reuses its own sieve buffers so memory stays bounded
+        Kernels.forEachTask(segments, segment -> {
+            FactorSieve sieve = Vector.factorSieves.get();
+            long low = 1 + (long) segment * FactorSieve.segmentSize;
+
+            if (low > size) {
+                return;
+            }
+
+            sieve.sieveSigma(low, (int) Math.min(FactorSieve.segmentSize, size - low + 1));
+
+            for (int i = 0; i < sieve.getSpan(); i++) {
+                cache.put((int) low + i, sieve.getProperSum(i));
+            }
+        });
+
+        CacheStore.save(CacheStore.kindAbundant, Vector.cacheSizeAb, Vector.abundantCache);
     }
 
     /**
      * This does the heavy lifting and initializes the prime cache
      */
     // reference: https://en.wikipedia.org/wiki/Sieve_of_Eratosthenes#Algorithm_and_variants
-    public static void initializePrimeCache(long start, int length) {
-        long capacity = start + ((long)length*10);
+    public static void initializePrimeCache(long start, long length) {
+        long capacity = start + (length*10);
 
         if (capacity < (long)Vector.cacheSizePr && Vector.primeCache != null) {
             return;
         }
 
-        Vector.cacheSizePr = Math.min( Math.max(Vector.cacheSizePr, (int)capacity), Vector.cacheMaxPr);
-        Vector.primeCache = new boolean[Vector.cacheSizePr+1];
+        int size = Math.min( Math.max(Vector.cacheSizePr, (int)capacity), Vector.cacheMaxPr);
+
+        // a previous run may have left a big enough cache on disk
+        CacheStore.Mapped mapped = CacheStore.load(CacheStore.kindPrime);
+        if (mapped != null && mapped.limit >= size && mapped.words.limit() == BitSieve.wordCount(mapped.limit)) {
+            Vector.cacheSizePr = (int) mapped.limit;
+            Vector.primeCache = new BitSieve(mapped.limit, mapped.words);
+            return;
+        }
+
+        Vector.cacheSizePr = size;
+        Vector.primeCache = new BitSieve(Vector.cacheSizePr);
+
+        // 1 is not a prime
+        Vector.primeCache.set(1);
+
+        final BitSieve sieve = Vector.primeCache;
+        final long limit = Vector.cacheSizePr;
+        final int[] primes = SegmentedSieve.basePrimes(SegmentedSieve.isqrt(limit));
+
+        // segments own whole words, so they can be struck out concurrently
+        Kernels.forEachTask((int) (limit / cacheSegment) + 1, segment -> {
+            long low = (long) segment * cacheSegment;
+            long high = Math.min(low + cacheSegment - 1, limit);
+
+            // only odd numbers are stored, so only strike out the odd multiples
+            for (int k = 1; k < primes.length && (long) primes[k] * primes[k] <= high; k++) {
+                long p = primes[k];
+                long first = Math.max(p * p, ((low + p - 1) / p) * p);
 
-        Vector.primeCache[2] = false;
-        Vector.primeCache[3] = false;
+                if ((first & 1) == 0) {
+                    first += p;
+                }
 
-        final long limit = (long) Math.sqrt((double) Vector.cacheSizePr);
-        // generate a boolean array with all the primes set to false
-        for (long i = 2; i < limit; i++) {
-            if (! Vector.primeCache[(int) i]) {
-                for (long j = (i*i); j <= Vector.cacheSizePr; j+=i) {
-                    Vector.primeCache[(int) j] = true;
+                for (long j = first; j <= high; j += 2*p) {
+                    sieve.set(j);
                 }
             }
-        }
+        });
+
+        CacheStore.save(CacheStore.kindPrime, Vector.cacheSizePr, Vector.primeCache.getWords());
     }
 
     /**
@@ -218,91 +307,86 @@ public class Vector {
      * uses initializePrimeCache as a helper because we can get the semiprimes from that
      */
     // reference: http://codility-lessons.blogspot.com.au/2015/03/lesson-9-countsemiprimes.html
-    public static void initializePQCache(long start, int length) {
+    public static void initializePQCache(long start, long length) {
         // setup the prime cache
         Vector.initializePrimeCache(start, length);
 
-        if (Vector.pqCache != null && Vector.cacheSizePq == Vector.cacheSizePr) {
+        int size = Math.min(Vector.cacheSizePr, Vector.cacheMaxPq);
+
+        if (Vector.pqCache != null && Vector.cacheSizePq >= size) {
             return;
         }
 
-        Vector.pqCache = new boolean[Vector.cacheSizePq+1];
-
-        final long limit = (long) Math.sqrt(Vector.cacheSizePq);
-
-        for (long i = 2; i < limit; i++ ) {
-            // not a prime
-            if (! Vector.primeCache[(int) i]) {
-                for (long j = i; (j * i) <= Vector.cacheSizePq; j++) {
-                    // found a prime
-                    if (!Vector.primeCache[(int) j]) {
-                        // set the pq cache index j*i to is semiprime
-                        Vector.pqCache[(int) (j * i)] = true;
-                    }
-                }
-            }
+        // a previous run may have left a big enough cache on disk
+        CacheStore.Mapped mapped = CacheStore.load(CacheStore.kindPQ);
+        // even values are looked up as n/2 in the prime cache, so that has to reach half way
+        if (mapped != null && mapped.limit >= size && mapped.limit / 2 <= Vector.cacheSizePr &&
+                mapped.words.limit() == BitSieve.wordCount(mapped.limit)) {
+            Vector.cacheSizePq = (int) mapped.limit;
+            Vector.pqCache = new BitSieve(mapped.limit, mapped.words);
+            return;
         }
-    }
-
-    public static void bucketSort(long[] in, long[] out) {
-        bucketSort(in, out, 2000, false);
-    }
 
-    /**
-     *  Quick dirty limited bucket sort implementation for random arrays
-     */
-    public static void bucketSort(long[] in, long[] out, long upper, boolean modeFlag) {
-        long[] buckets = new long[(int)upper+1];
+        Vector.cacheSizePq = size;
+        Vector.pqCache = new BitSieve(Vector.cacheSizePq);
 
-        for (long i = 0; i < in.length; i++) {
-            buckets[(int)in[(int)i]]++;
-        }
+        final BitSieve sieve = Vector.pqCache;
+        final long limit = Vector.cacheSizePq;
+        final int[] primes = SegmentedSieve.basePrimes(SegmentedSieve.isqrt(limit));
 
-        long max = 0L;
-        long mode = -1L;
-        long sum = 0;
+        // odd semiprimes are products of two odd primes, even ones are answered by the prime cache
+        Kernels.forEachTask((int) (limit / cacheSegment) + 1, segment -> {
+            long low = (long) segment * cacheSegment;
+            long high = Math.min(low + cacheSegment - 1, limit);
 
-        for (long i = 0, idx = 0; i < buckets.length; i++) {
-            for (long j = 0; j < buckets[(int)i]; j++, idx++) {
-                out[(int)idx] = i;
-            }
+            for (int k = 1; k < primes.length && (long) primes[k] * primes[k] <= high; k++) {
+                long i = primes[k];
+                // smallest odd cofactor j >= i that lands inside this segment
+                long j = Math.max(i, (low + i - 1) / i);
 
-            sum += (buckets[(int)i] * i);
+                if ((j & 1) == 0) {
+                    j++;
+                }
 
-            if (modeFlag) {
-                if (max != buckets[(int) i]) {
-                    if (buckets[(int) i] > max) {
-                        max = buckets[(int) i];
-                        mode = i;
+                for (; (j * i) <= high; j += 2) {
+                    // found a prime
+                    if (! Vector.primeCache.get(j)) {
+                        // set the pq cache index j*i to is semiprime
+                        sieve.set(j * i);
                     }
-                } else {
-                    mode = -1L;
                 }
             }
-        }
+        });
 
-        Vector.lastMode = (modeFlag) ? mode : null;
-        Vector.lastSum = sum;
+        CacheStore.save(CacheStore.kindPQ, Vector.cacheSizePq, Vector.pqCache.getWords());
     }
 
     /**
      * Returns new vector with elements generated at random up to 100.
      */
-    public static Vector random(int length, long seed) {
+    public static Vector random(long length, long seed) {
 
         Vector vector = new Vector(length);
+        long[] elements = new long[(int) Math.min(length, readBlock)];
         Random random = new Random(seed);
 
         long min = 100;
         long max = -1;
         long sum = 0;
 
-        for (int i = 0; i < length; i++) {
-            sum += vector.elements[i] = (long) random.nextInt(101);
-            if (vector.elements[i] < min || vector.elements[i] > max) {
-                min = min > vector.elements[i] ? vector.elements[i] : min;
-                max = max < vector.elements[i] ? vector.elements[i] : max;
+        // generated a block at a time, then written to wherever the vector keeps its elements
+        for (long from = 0; from < length; from += elements.length) {
+            int count = (int) Math.min(elements.length, length - from);
+
+            for (int i = 0; i < count; i++) {
+                sum += elements[i] = (long) random.nextInt(101);
+                if (elements[i] < min || elements[i] > max) {
+                    min = min > elements[i] ? elements[i] : min;
+                    max = max < elements[i] ? elements[i] : max;
+                }
             }
+
+            vector.storage.write(from, elements, 0, count);
         }
 
         vector.minimum = min;
@@ -317,22 +401,21 @@ public class Vector {
     /**
      * Returns new vector with all elements set to given value.
      */
-    public static Vector uniform(int length, long value) {
+    public static Vector uniform(long length, long value) {
         /*
             length 1, value 1 => [1]
             length 2, value 2 => [2 2]
             length 3, value 3 => [3 3 3]
             length 4, value 4 => [4 4 4 4]
         */
-        Vector vector = new Vector(length);
-        // fills elements with a static value
-        Arrays.fill(vector.elements, value);
+        // every element is the same, so only the value is kept
+        Vector vector = new Vector(length, new SequenceStorage(length, value, 0));
 
         // things we can we cache by default
         // min / max / median / mode are identical
-        vector.minimum = vector.maximum = vector.median = vector.mode = vector.elements[0];
+        vector.minimum = vector.maximum = vector.median = vector.mode = value;
         // sum is simply the length * value
-        vector.sum = (long)length * value;
+        vector.sum = length * value;
         vector.uniform = true;
         vector.stable = true;
 
@@ -342,7 +425,7 @@ public class Vector {
     /**
      * Returns new vector with elements in sequence from given start and step.
      */
-    public static Vector sequence(int length, long start, long step) {
+    public static Vector sequence(long length, long start, long step) {
         /*
             length 1, start 1, step 1  => [1]
             length 2, start 2, step 2  => [2 4]
@@ -350,31 +433,26 @@ public class Vector {
             length 4, start 4, step 4  => [4 8 12 16]
             length 5, start 5, step -1 => [5 4 3 2 1]
         */
-        Vector vector = new Vector(length);
-
-        long sum = 0;
-
-        // use the current index to calculate the values offset from start
-        for (int i = 0; i < length; i++) {
-            sum += vector.elements[i] = start + (step * (long) i);
-        }
+        // each element is start + step * index, so only those two are kept
+        Storage storage = new SequenceStorage(length, start, step);
+        Vector vector = new Vector(length, storage);
 
         // things we can we cache by default
         // we know its ordered so we can grab the min/max
-        vector.maximum = vector.elements[(step >= 0) ? length-1 : 0];
-        vector.minimum = vector.elements[(step >= 0) ? 0 : length-1];
-        vector.median  = vector.elements[length/2];
+        vector.maximum = storage.get((step >= 0) ? length-1 : 0);
+        vector.minimum = storage.get((step >= 0) ? 0 : length-1);
+        vector.median  = storage.get(length/2);
         vector.stable = true;
-        vector.sum = sum;
+        vector.sum = storage.sum();
 
         if (step < 0) {
             vector.reversed = true;
             // inverse median
-            vector.median  = vector.elements[length % 2 == 0 ? (length/2)-1 : length/2];
+            vector.median  = storage.get(length % 2 == 0 ? (length/2)-1 : length/2);
         }
 
         // mode is either element 0 or -1 since a sequence has only one instance of each value
-        vector.mode = (length > 1) ? -1 : vector.elements[0];
+        vector.mode = (length > 1) ? -1 : storage.get(0);
         //vector.sum  = sum;
 
         return vector;
@@ -383,119 +461,164 @@ public class Vector {
     /**
      * Returns whether the number is semiprime.
      */
-    // reference: https://rosettacode.org/wiki/Semiprime
+    // strip small factors, then either the cube root bound or pollard rho settles it
     public static boolean isPQ(long number) {
-        if (number < 4 || Vector.isPrimeCached(number)) {
+        if (number < 4) {
             return false;
         }
 
-        long n = number;
-        long start = 2;
-        long factors = 0;
+        final long cbrt = Vector.icbrt(number);
+        final int[] primes = SegmentedSieve.basePrimes(Vector.smallFactorLimit);
 
-        while ( factors < 3 && n != 1 ) {
-            if ( n % start == 0 ) {
-                n /= start;
-                factors++;
-            } else {
-                start++;
+        // the first prime that divides it is the smallest factor, the rest has to be prime,
+        // the shared table may have grown far past the limit and pollard rho is quicker from there
+        for (int p : primes) {
+            if (p > cbrt || p > Vector.smallFactorLimit) {
+                break;
+            }
+
+            if (number % p == 0) {
+                return Vector.isPrimeCached(number / p);
             }
         }
 
-        return (factors == 2);
+        if (Vector.isPrimeCached(number)) {
+            return false;
+        }
+
+        // every factor is above the cube root, so a composite has exactly two
+        if (cbrt <= Vector.smallFactorLimit) {
+            return true;
+        }
+
+        long factor = PollardRho.factor(number);
+
+        return Vector.isPrimeCached(factor) && Vector.isPrimeCached(number / factor);
+    }
+
+    /**
+     * Returns the integer cube root of the number.
+     */
+    private static long icbrt(long number) {
+        // largest root whose cube still fits in a long
+        final long maxRoot = 2097151L;
+        long root = Math.min((long) Math.cbrt((double) number), maxRoot);
+
+        while (root * root * root > number) {
+            root--;
+        }
+
+        while (root < maxRoot && (root + 1) * (root + 1) * (root + 1) <= number) {
+            root++;
+        }
+
+        return root;
     }
 
     /**
      * Returns new vector with elements generated from the
      * pq number sequence starting from the specified value.
      */
-    public static Vector pq(int length, long start) {
+    public static Vector pq(long length, long start) {
         /*
             length 4, start 1  => [4 6 9 10]
             length 4, start 4  => [4 6 9 10]
             length 4, start -1 => [4 6 9 10]
             length 4, start 42 => [46 49 51 55]
         */
-        Vector vector = new Vector(length);
+        long first = (start >= 4) ? start : 4;
+        long end = first + FactorSieve.estimatePQSpan(first, length);
 
-        // check if the prime cache is initialized
-        Vector.initializePQCache(start, length);
+        // past the cache ceiling the windows are factored directly instead
+        if (end <= Vector.cacheMaxPq) {
+            Vector.initializePQCache(start, length);
+        }
 
-        int idx = 0;
-        long sum = 0;
+        Vector vector = new Vector(length);
 
-        for (long current = (start >= 4) ? start : 4; idx < length ; current++) {
-            if (Vector.isPQCached(current)) {
-                sum += vector.elements[idx] = current;
-                idx++;
-            }
-        }
+        WindowGenerator generator = new WindowGenerator(Vector::markPQ, FactorSieve::estimatePQSpan,
+                FactorSieve.segmentSize, first, length);
+        Storage elements = vector.storage;
+        long sum = generator.generate(elements, first);
 
         // set these up
-        vector.minimum = vector.elements[0];
-        vector.maximum = vector.elements[length-1];
-        vector.mode    = (length > 1) ? -1 : vector.elements[0];
-        vector.median  = vector.elements[length/2];
+        vector.minimum = elements.get(0);
+        vector.maximum = elements.get(length-1);
+        vector.mode    = (length > 1) ? -1 : elements.get(0);
+        vector.median  = elements.get(length/2);
         vector.sum     = sum;
 
         vector.stable = true;
+        vector.compress();
 
         return vector;
     }
 
     /**
-     * Returns whether the number is prime.
+     * Marks the semiprimes in the window, from the cache where it reaches
+     * and from a windowed factor sieve past it
      */
-    // cant be divisible by 2, at i^2 the factors cross over so we can sqrt number
-    public static boolean isPrime(long number) {
-        if (number < 2) {
-            return false;
-        }
-
-        if (number == 2 || number == 3) {
-            return true;
-        }
-
-        if (number % 2 == 0 || number % 3 == 0) {
-            return false;
-        }
+    private static void markPQ(long low, int span, long[] bits) {
+        if (Vector.pqCache != null && low + span <= Vector.cacheSizePq) {
+            for (int k = 0; k < span; k++) {
+                if (Vector.getStateFromPQCache(low + k)) {
+                    bits[k >>> 6] |= 1L << k;
+                }
+            }
+        } else if (SegmentedSieve.canSieve(low, low + span)) {
+            FactorSieve sieve = Vector.factorSieves.get();
+            sieve.sieve(low, span);
 
-        for (long i = 5; (i*i) <= number; i+=6) {
-            if (number % i == 0 || number % (i+2) == 0) {
-                return false;
+            for (int k = 0; k < span; k++) {
+                if (sieve.isPQ(k)) {
+                    bits[k >>> 6] |= 1L << k;
+                }
+            }
+        } else {
+            for (int k = 0; k < span; k++) {
+                if (Vector.isPQCached(low + k)) {
+                    bits[k >>> 6] |= 1L << k;
+                }
             }
         }
+    }
 
-        return true;
+    /**
+     * Returns whether the number is prime.
+     */
+    // trial division is O(sqrt n) per call, miller rabin stays in the microseconds up to 2^63
+    public static boolean isPrime(long number) {
+        return MillerRabin.isPrime(number);
     }
     /**
      * Returns new vector with elements generated from the
      * prime number sequence starting from the specified value.
      */
-    public static Vector prime(int length, long start) {
-        // check if the prime cache is initialized
-        Vector.initializePrimeCache(start, length);
+    public static Vector prime(long length, long start) {
+        long first = (start < 2) ? 2 : start;
+        long end = first + SegmentedSieve.estimatePrimeSpan(first, length);
+
+        // past the cache ceiling only the windows we actually need are sieved
+        if (end <= Vector.cacheMaxPr) {
+            Vector.initializePrimeCache(start, length);
+        }
 
         Vector vector = new Vector(length);
 
-        int idx = 0;
-        long sum = 0;
-
-        for (long current = (start < 2) ? 2 : start; idx < length; current++) {
-            if (Vector.isPrimeCached(current)) {
-                sum += vector.elements[idx] = current;
-                idx++;
-            }
-        }
+        WindowGenerator generator = new WindowGenerator((low, span, bits) -> Vector.markPrimes(low, span, bits, true),
+                SegmentedSieve::estimatePrimeSpan, SegmentedSieve.segmentSize, first, length);
+        Storage elements = vector.storage;
+        long sum = generator.generate(elements, first);
 
         // set these up
-        vector.minimum = vector.elements[0];
-        vector.maximum = vector.elements[length-1];
-        vector.mode    = (length > 1) ? -1 : vector.elements[0];
-        vector.median  = vector.elements[length / 2];
+        vector.minimum = elements.get(0);
+        vector.maximum = elements.get(length-1);
+        vector.mode    = (length > 1) ? -1 : elements.get(0);
+        vector.median  = elements.get(length / 2);
         vector.sum     = sum;
 
         vector.stable = true;
+        vector.compress();
 
         return vector;
     }
@@ -504,82 +627,139 @@ public class Vector {
      * Returns whether the number is abundant.
      */
     public static boolean isAbundant(long number) {
-        long sum = 1;
-
         // known by default
         if (number < 12) {
             return false;
         }
 
-        boolean[] checked = new boolean[(int)(number/2)+1];
+        return Vector.divisorSum(number) - number > number;
+    }
 
-        if (number % 2 == 0) {
-            for (long i = 2; i <= number / 2; i+=2) {
-                if (! checked[(int) i]) {
-                    sum += (number % i == 0) ? i : 0;
-                    checked[(int) i] = true;
-                }
+    /**
+     * Returns the sum of all divisors of the number, including itself.
+     */
+    // sigma is multiplicative, so factor the number and multiply the prime power terms
+    public static long divisorSum(long number) {
+        long n = number;
+        long sigma = 1;
+
+        // the shared table may have grown far past the limit, the large factor path takes over from there
+        for (int p : SegmentedSieve.basePrimes(Vector.smallFactorLimit)) {
+            if ((long) p * p > n || p > Vector.smallFactorLimit) {
+                break;
             }
-        }
 
-        for (long i = 3; i <= number / 2; i+=2) {
-            if (! Vector.isPrimeCached(i)) {
-                continue;
+            if (n % p == 0) {
+                long pk = 1;
+                long term = 1;
+
+                do {
+                    n /= p;
+                    pk *= p;
+                    term += pk;
+                } while (n % p == 0);
+
+                sigma *= term;
             }
+        }
 
-            for (long j = i; j <= number / 2; j += i) {
-                if (checked[(int) j]) {
-                    continue;
-                }
+        // no small factors left, split off the large ones one prime at a time
+        while (n > 1) {
+            long q = Vector.primeFactor(n);
+            long pk = 1;
+            long term = 1;
+
+            do {
+                n /= q;
+                pk *= q;
+                term += pk;
+            } while (n % q == 0);
+
+            sigma *= term;
+        }
 
-                checked[(int) j] = true;
-                if (number % j == 0) {
-                    sum += j;
+        return sigma;
+    }
+
+    /**
+     * Returns a prime factor of a number that has no small factors.
+     */
+    private static long primeFactor(long number) {
+        long q = number;
+
+        while (! Vector.isPrimeCached(q)) {
+            // rho struggles with perfect squares, take the root directly
+            long root = SegmentedSieve.isqrt(q);
+            q = (root * root == q) ? root : PollardRho.factor(q);
+        }
+
+        return q;
+    }
+
+    /**
+     * Marks the abundant numbers in the window, from the cache where it reaches
+     * and from windowed divisor sums past it
+     */
+    private static void markAbundant(long low, int span, long[] bits) {
+        if (Vector.abundantCache != null && low + span <= Vector.cacheSizeAb) {
+            for (int k = 0; k < span; k++) {
+                if (low + k > 0 && Vector.getStateFromAbundantCache(low + k)) {
+                    bits[k >>> 6] |= 1L << k;
                 }
             }
+        } else if (low > 0 && SegmentedSieve.canSieve(low, low + span)) {
+            FactorSieve sieve = Vector.factorSieves.get();
+            sieve.sieveSigma(low, span);
 
-            if (sum > number) {
-                return true;
+            for (int k = 0; k < span; k++) {
+                if (sieve.isAbundant(k)) {
+                    bits[k >>> 6] |= 1L << k;
+                }
+            }
+        } else {
+            for (int k = 0; k < span; k++) {
+                if (Vector.isAbundantCached(low + k)) {
+                    bits[k >>> 6] |= 1L << k;
+                }
             }
         }
-
-        return false;
     }
 
     /**
      * Returns new vector with elements generated from the
      * abundant number sequence starting from the specified value.
      */
-    public static Vector abundant(int length, long start) {
+    public static Vector abundant(long length, long start) {
         /*
             length 4, start 0  => [12 18 20 24]
             length 4, start 12 => [12 18 20 24]
             length 4, start -1 => [12 18 20 24]
             length 4, start 42 => [42 48 54 56]
         */
-        Vector vector = new Vector(length);
+        long first = (start < 12) ? 12 : start;
+        long end = first + FactorSieve.estimateAbundantSpan(first, length);
 
-        Vector.initializeAbundantCache(start, length);
+        // past the cache ceiling only the windows we need get divisor sums
+        if (end <= Vector.cacheMaxAb) {
+            Vector.initializeAbundantCache(start, length);
+        }
 
-        //abc
-        int idx = 0;
-        long sum = 0;
+        Vector vector = new Vector(length);
 
-        for (long current = (start < 12) ? 12 : start; idx < length ; current++) {
-            if (Vector.isAbundantCached(current)) {
-                sum += vector.elements[idx] = current;
-                idx++;
-            }
-        }
+        WindowGenerator generator = new WindowGenerator(Vector::markAbundant, FactorSieve::estimateAbundantSpan,
+                FactorSieve.segmentSize, first, length);
+        Storage elements = vector.storage;
+        long sum = generator.generate(elements, first);
 
         // set these up
-        vector.minimum = vector.elements[0];
-        vector.maximum = vector.elements[length-1];
-        vector.mode    = (length > 1) ? -1 : vector.elements[0];
-        vector.median  = vector.elements[length / 2];
+        vector.minimum = elements.get(0);
+        vector.maximum = elements.get(length-1);
+        vector.mode    = (length > 1) ? -1 : elements.get(0);
+        vector.median  = elements.get(length / 2);
         vector.sum     = sum;
 
         vector.stable = true;
+        vector.compress();
 
         return vector;
     }
@@ -596,39 +776,76 @@ public class Vector {
      * Returns new vector with elements generated from the
      * composite number sequence starting from the specified value.
      */
-    public static Vector composite(int length, long start) {
+    public static Vector composite(long length, long start) {
         /*
             length 4, start 0  => [4 6 8 9]
             length 4, start 4  => [4 6 8 9]
             length 4, start -1 => [4 6 8 9]
             length 4, start 42 => [42 44 45 46]
         */
+        long first = (start < 4) ? 4 : start;
+        long end = first + Vector.estimateCompositeSpan(first, length);
 
-        Vector.initializePrimeCache(start, length);
+        if (end <= Vector.cacheMaxPr) {
+            Vector.initializePrimeCache(start, length);
+        }
 
         Vector vector = new Vector(length);
 
-        int idx = 0;
-        long sum = 0;
-
-        for (long current = (start < 4) ? 4 : start; idx < length ; current++) {
-            if (Vector.isComposite(current)) {
-                sum += vector.elements[idx] = current;
-                idx++;
-            }
-        }
+        WindowGenerator generator = new WindowGenerator((low, span, bits) -> Vector.markPrimes(low, span, bits, false),
+                Vector::estimateCompositeSpan, SegmentedSieve.segmentSize, first, length);
+        Storage elements = vector.storage;
+        long sum = generator.generate(elements, first);
 
         // set these up
-        vector.minimum = vector.elements[0];
-        vector.maximum = vector.elements[length-1];
-        vector.mode    = (length > 1) ? -1 : vector.elements[0];
-        vector.median  = vector.elements[length / 2];
+        vector.minimum = elements.get(0);
+        vector.maximum = elements.get(length-1);
+        vector.mode    = (length > 1) ? -1 : elements.get(0);
+        vector.median  = elements.get(length / 2);
         vector.stable  = true;
         vector.sum     = sum;
+        vector.compress();
 
         return vector;
     }
 
+    /**
+     * Estimates how far past start we need to look to find count composites
+     */
+    // composites are dense, at most one in two values is skipped
+    private static long estimateCompositeSpan(long start, long count) {
+        return (count * 2) + 64;
+    }
+
+    /**
+     * Marks the primes (or composites) in the window, from the cache where it
+     * reaches and from a segmented sieve past it
+     */
+    private static void markPrimes(long low, int span, long[] bits, boolean primes) {
+        if (Vector.primeCache != null && low > 0 && low + span <= Vector.cacheSizePr) {
+            for (int k = 0; k < span; k++) {
+                if (Vector.getStateFromPrimeCache(low + k) == primes && low + k > 1) {
+                    bits[k >>> 6] |= 1L << k;
+                }
+            }
+        } else if (SegmentedSieve.canSieve(low, low + span)) {
+            SegmentedSieve sieve = Vector.segmentedSieves.get();
+            sieve.sieve(low, span);
+
+            for (int k = 0; k < span; k++) {
+                if (primes ? sieve.isPrime(k) : sieve.isComposite(k)) {
+                    bits[k >>> 6] |= 1L << k;
+                }
+            }
+        } else {
+            for (int k = 0; k < span; k++) {
+                if (primes ? Vector.isPrimeCached(low + k) : Vector.isComposite(low + k)) {
+                    bits[k >>> 6] |= 1L << k;
+                }
+            }
+        }
+    }
+
     // ===========================================================================
     // VECTOR OPERATIONS
     // ===========================================================================
@@ -642,9 +859,8 @@ public class Vector {
             [1 2 3 4] => [1 2 3 4]
             [4 3 2 1] => [4 3 2 1]
         */
-        Vector clone = new Vector(this.length);
-
-        System.arraycopy(this.elements, 0, clone.elements, 0, this.length);
+        // the clone reads our storage, whichever side writes to it first takes its own copy
+        Vector clone = new Vector(this.length, this.storage.share());
 
         clone.stable = this.stable;
         clone.reversed = this.reversed;
@@ -656,6 +872,7 @@ public class Vector {
         clone.mode = this.mode;
         clone.minimum = this.minimum;
         clone.maximum = this.maximum;
+        clone.distinct = this.distinct;
 
         return clone;
     }
@@ -674,7 +891,7 @@ public class Vector {
 
         if (this.stable) {
             if (this.reversed) {
-                if (this.elements[0] < this.elements[length-1]) {
+                if (this.storage.get(0) < this.storage.get(length-1)) {
                     this.reversed = false;
                     return this.sorted();
                 }
@@ -683,53 +900,50 @@ public class Vector {
             return this.cloned();
         }
 
-        if (this.random) {
-            Vector vector = new Vector(this.length);
-
-            vector.stable = true;
-            vector.reversed = false;
-            vector.random = true;
-            vector.uniform = false;
+        // bounds are only worth a look when known already, e.g. random ones however they were shifted,
+        // finding them would cost passes the radix sort below does not need
+        boolean bounded = this.minimum != null && this.maximum != null;
 
-            if ((this.minimum != null && this.minimum >= 0) &&
-                    ((this.maximum != null && this.maximum <= (20*1000*1000)) ||
-                            (this.maximum == null && this.getMaximum() <= 20*1000*1000))) {
+        if (!this.uniform && bounded && CountingSort.fits(this.length, this.minimum, this.maximum)) {
+            // few distinct values, sorted by counting them
+            Storage sorted = Storage.allocate(this.length);
+            CountingSort.Result counted = CountingSort.sort(this.storage.unordered(), sorted, this.minimum, this.maximum);
 
-                if (this.mode == null) {
-                    Vector.bucketSort(this.elements, vector.elements, Math.max(this.maximum, 100),
-                                      true);
-                    vector.mode = Vector.lastMode;
-                    Vector.lastMode = null;
-                } else {
-                    Vector.bucketSort(this.elements, vector.elements, Math.max(this.maximum, 100),
-                                      false);
-                }
+            if (counted != null) {
+                Vector vector = new Vector(this.length, sorted);
 
-                vector.sum = Vector.lastSum;
-                Vector.lastSum = null;
+                vector.stable = true;
+                vector.reversed = false;
+                vector.random = this.random;
+                vector.uniform = false;
 
-                vector.minimum = vector.elements[0];
-                vector.maximum = vector.elements[this.length - 1];
-                vector.median = vector.elements[this.length / 2];
+                // both hold the same values, so both learn what the counting found
+                this.fill(counted);
+                vector.fill(counted);
+                vector.minimum = counted.minimum;
+                vector.maximum = counted.maximum;
+                vector.compress();
 
                 return vector;
             }
+
+            sorted.release();
         }
 
         Vector vector = this.cloned();
 
         if (!this.uniform) {
-            // and sort the clones elements
-            if (this.length > (75*1000)) {
-                Arrays.parallelSort(vector.elements);
-            } else {
-                Arrays.sort(vector.elements);
-            }
+            // sort a copy of the elements, kept wherever vectors keep their elements
+            vector.replaceStorage(Storage.sortedCopyOf(this.storage));
         }
 
         vector.stable = true;
         vector.reversed = false;
 
+        if (!this.uniform) {
+            vector.compress();
+        }
+
         return vector;
     }
 
@@ -741,17 +955,8 @@ public class Vector {
             return this.cloned();
         }
 
-        Vector vector = new Vector(this.length);
-
-        if (this.length % 2 == 1) {
-            vector.elements[this.length/2] = this.elements[this.length/2];
-        }
-
-        // write forwards as we read this instance backwards
-        for (int i = 0; i < this.length/2; i++) {
-            vector.elements[i] = this.elements[(this.length - 1) - i];
-            vector.elements[(this.length - 1) - i] = this.elements[i];
-        }
+        // a view reading our storage backwards, nothing is copied
+        Vector vector = new Vector(this.length, this.storage.share().reverse());
 
         vector.reversed = !(this.reversed);
         vector.stable = this.stable;
@@ -771,7 +976,6 @@ public class Vector {
      * Returns new vector with elements shifted right by a given number of positions.
      */
     public Vector shifted(long amount) {
-        Vector vector = new Vector(this.length);
         /*
             [1 2 3 4] 0 => [1 2 3 4]
             [1 2 3 4] 1 => [4 1 2 3]
@@ -780,23 +984,8 @@ public class Vector {
             [1 2 3 4] 4 => [1 2 3 4]
             [1 2 3 4] 5 => [4 1 2 3]
         */
-
-        if (amount >= 0) {
-            // select the offset element from this instance at index (i+amount) % length
-            for (int i = 0; i < this.length; i++) {
-                vector.elements[(i + (int) amount) % this.length] = this.elements[i];
-            }
-        } else {
-            // fixes negative shifting
-            Vector rev = this.reversed();
-            Vector temp = new Vector(this.length);
-
-            for (int i = 0; i < this.length; i++) {
-                temp.elements[(i + Math.abs((int) amount)) % this.length] = rev.elements[i];
-            }
-
-            vector = temp.reversed();
-        }
+        // element i moves to (i + amount) % length, a view works that out on every read
+        Vector vector = new Vector(this.length, this.storage.share().shift(amount));
 
         vector.minimum = (this.minimum != null) ? this.minimum : null;
         vector.maximum = (this.maximum != null) ? this.maximum : null;
@@ -821,13 +1010,14 @@ public class Vector {
             [1 2 3 4] + 4  => [5 6 7 8]
             [2 2 2 2] + -1 => [1 1 1 1]
         */
-        Vector vector = new Vector(this.length);
-
-        // add scalar to each element of this instance
-        for (int i = 0; i < this.length; i++) {
-            vector.elements[i] = this.elements[i] + scalar;
+        // add scalar to each element of this instance, once the elements are needed
+        Storage added = this.storage.add(scalar);
+        if (added == null) {
+            added = new ExpressionStorage(ExpressionStorage.add, this.storage.share(), scalar);
         }
 
+        Vector vector = new Vector(this.length, added);
+
         vector.minimum = (this.minimum != null) ? this.minimum + scalar : null;
         vector.maximum = (this.maximum != null) ? this.maximum + scalar : null;
         vector.median  = (this.median  != null) ? this.median  + scalar : null;
@@ -853,16 +1043,22 @@ public class Vector {
             [1 2 3 4] x 10 => [10 20 30 40]
             [1 2 3 4] x -1 => [-1 -2 -3 -4]
         */
-        Vector vector = new Vector(this.length);
-
-        // multiply each element by scalar
-        for (int i = 0; i < this.length; i++) {
-            vector.elements[i] = this.elements[i] * scalar;
+        // multiply each element by scalar, once the elements are needed
+        Storage multiplied = this.storage.multiply(scalar);
+        if (multiplied == null) {
+            multiplied = new ExpressionStorage(ExpressionStorage.multiply, this.storage.share(), scalar);
         }
 
-        vector.minimum = (this.minimum != null) ? this.minimum * scalar : null;
-        vector.maximum = (this.maximum != null) ? this.maximum * scalar : null;
-        vector.median  = (this.median  != null) ? this.median  * scalar : null;
+        Vector vector = new Vector(this.length, multiplied);
+
+        // a negative scalar turns the order around, the smallest element becomes the largest
+        Long minimum = (scalar < 0) ? this.maximum : this.minimum;
+        Long maximum = (scalar < 0) ? this.minimum : this.maximum;
+
+        vector.minimum = (minimum != null) ? minimum * scalar : null;
+        vector.maximum = (maximum != null) ? maximum * scalar : null;
+        // and the upper median the lower one, which is only the same element for odd lengths
+        vector.median  = (this.median  != null && (scalar >= 0 || this.length % 2 == 1)) ? this.median * scalar : null;
         vector.sum     = (this.sum     != null) ? this.sum     * scalar : null;
 
         if (scalar == 0) {
@@ -890,16 +1086,18 @@ public class Vector {
             [2 2 2 2] + [-1 -1 -1 -1] => [2 2 2 2]
         */
 
-        Vector vector = new Vector(this.length);
         // add v1[index] + v2[index] expected that: v2.length == v1.length
-        for (int i = 0; i < this.length; i++) {
-            vector.elements[i] = this.elements[i] + other.elements[i];
+        Storage added = this.storage.add(other.storage);
+        if (added == null) {
+            added = new ExpressionStorage(ExpressionStorage.add, this.storage.share(), other.storage.share());
         }
 
+        Vector vector = new Vector(this.length, added);
+
         if (other.uniform) {
-            vector.minimum = (this.minimum != null) ? this.minimum + other.elements[0] : null;
-            vector.maximum = (this.maximum != null) ? this.maximum + other.elements[0] : null;
-            vector.median  = (this.median  != null) ? this.median  + other.elements[0] : null;
+            vector.minimum = (this.minimum != null) ? this.minimum + other.storage.get(0) : null;
+            vector.maximum = (this.maximum != null) ? this.maximum + other.storage.get(0) : null;
+            vector.median  = (this.median  != null) ? this.median  + other.storage.get(0) : null;
         }
 
         if (this.uniform && other.uniform) {
@@ -908,9 +1106,9 @@ public class Vector {
 
         if ((this.stable && other.stable) && ! (this.reversed || other.reversed)) {
             vector.stable = true;
-            vector.minimum = vector.elements[0];
-            vector.maximum = vector.elements[this.length-1];
-            vector.median  = vector.elements[length/2];
+            vector.minimum = vector.storage.get(0);
+            vector.maximum = vector.storage.get(this.length-1);
+            vector.median  = vector.storage.get(length/2);
         }
 
         if (this.length < (250*1000) && (this.random || other.random)  ||
@@ -950,18 +1148,14 @@ public class Vector {
             [2 2 2 2] x [-1 -1 -1 -1] => [-2 -2 -2 -2]
         */
 
-        Vector vector = new Vector(this.length);
-
-        // multiply v1[index] * v2[index] expected that: v2.length == v1.length
-
-        for (int i = 0; i < this.length; i++) {
-            vector.elements[i] = this.elements[i] * other.elements[i];
-        }
+        // multiply v1[index] * v2[index] expected that: v2.length == v1.length, once the elements are needed
+        Vector vector = new Vector(this.length,
+                new ExpressionStorage(ExpressionStorage.multiply, this.storage.share(), other.storage.share()));
 
 
         if ((this.reversed && other.reversed) ||
-                (this.reversed && other.uniform && other.elements[0] > 0) ||
-                (this.uniform  && other.reversed && this.elements[0] > 0)) {
+                (this.reversed && other.uniform && other.storage.get(0) > 0) ||
+                (this.uniform  && other.reversed && this.storage.get(0) > 0)) {
             vector.reversed = true;
         }
 
@@ -970,7 +1164,7 @@ public class Vector {
                 vector.uniform = true;
             }
 
-            if ((this.uniform && this.elements[0] == 0) || (other.uniform && other.elements[0] == 0)) {
+            if ((this.uniform && this.storage.get(0) == 0) || (other.uniform && other.storage.get(0) == 0)) {
                 vector.mode = 0L;
                 vector.uniform = true;
             } else if (this.uniform && this.minimum < 0 && other.stable && other.minimum >= 0) {
@@ -981,39 +1175,39 @@ public class Vector {
 
             // oops caught a non-reversed reverse flagged corner case
             if (vector.reversed && vector.minimum != null && vector.maximum != null &&
-                    vector.minimum == vector.elements[0] && vector.maximum == vector.elements[length-1]) {
+                    vector.minimum == vector.storage.get(0) && vector.maximum == vector.storage.get(length-1)) {
                 vector.reversed = !(vector.reversed);
             }
 
             if ((other.uniform || this.uniform) && !vector.uniform) {
                 vector.minimum = (this.minimum != null && other.minimum != null) ? (other.uniform ?
-                        this.minimum * other.elements[0] : other.minimum * this.elements[0]) : null;
+                        this.minimum * other.storage.get(0) : other.minimum * this.storage.get(0)) : null;
                 vector.maximum = (this.maximum != null && other.minimum != null) ? (other.uniform ?
-                        this.maximum * other.elements[0] : other.maximum * this.elements[0]) : null;
+                        this.maximum * other.storage.get(0) : other.maximum * this.storage.get(0)) : null;
 
                 if (vector.reversed && vector.maximum < vector.minimum) {
                     if (other.uniform && other.minimum < 0) {
-                        vector.minimum = this.maximum * other.elements[0];
-                        vector.maximum = this.minimum * other.elements[0];
+                        vector.minimum = this.maximum * other.storage.get(0);
+                        vector.maximum = this.minimum * other.storage.get(0);
                         vector.stable = true;
 
                     } else if (this.uniform && this.minimum < 0) {
-                        vector.minimum = other.maximum * this.elements[0];
-                        vector.maximum = other.minimum * this.elements[0];
+                        vector.minimum = other.maximum * this.storage.get(0);
+                        vector.maximum = other.minimum * this.storage.get(0);
                         vector.stable = true;
                     }
                 }
                 if (vector.stable) {
                     if (vector.reversed) {
-                        vector.median = vector.elements[length % 2 == 0 ? length / 2 - 1 : length / 2];
+                        vector.median = vector.storage.get(length % 2 == 0 ? length / 2 - 1 : length / 2);
                     } else {
-                        vector.median = vector.elements[length / 2];
+                        vector.median = vector.storage.get(length / 2);
                     }
                 } else {
                     if (this.median != null && other.median != null) {
-                        if ((this.median >= 0 && other.elements[0] > 0 && other.uniform) ||
-                                (other.median >= 0 && this.elements[0] > 0 && this.uniform)) {
-                            vector.median = (other.uniform) ? this.median * other.elements[0] : other.median * this.elements[0];
+                        if ((this.median >= 0 && other.storage.get(0) > 0 && other.uniform) ||
+                                (other.median >= 0 && this.storage.get(0) > 0 && this.uniform)) {
+                            vector.median = (other.uniform) ? this.median * other.storage.get(0) : other.median * this.storage.get(0);
                         } else {
                             vector.median = null;
                         }
@@ -1023,7 +1217,7 @@ public class Vector {
         }
 
         if (vector.reversed && (vector.minimum != null && vector.maximum != null) &&
-                (vector.minimum == vector.elements[length-1] && vector.maximum == vector.elements[0] &&
+                (vector.minimum == vector.storage.get(length-1) && vector.maximum == vector.storage.get(0) &&
                         vector.minimum > vector.maximum)) {
             vector.reversed = false;
 
@@ -1043,9 +1237,9 @@ public class Vector {
         }
 
         if ((this.stable && other.stable) && (!this.reversed && !other.reversed)) {
-            vector.median  = vector.elements[length/2];
-            vector.minimum = vector.elements[0];
-            vector.maximum = vector.elements[this.length-1];
+            vector.median  = vector.storage.get(length/2);
+            vector.minimum = vector.storage.get(0);
+            vector.maximum = vector.storage.get(this.length-1);
 
             if (vector.minimum < vector.maximum) {
                 vector.stable = true;
@@ -1095,18 +1289,18 @@ public class Vector {
         }
 
         if (this.length == 1) {
-            this.sum = this.elements[0];
+            this.sum = this.storage.get(0);
 
             return this.sum;
         }
 
-        this.sum = 0L;
-
-        // cost of creating threads plus summing is less than summing single threaded about here
-        long minParallel = 100*1000;
+        // closed forms need no pass at all
+        this.sum = this.storage.sum();
+        if (this.sum != null) {
+            return this.sum;
+        }
 
-        this.sum = (this.length < minParallel) ? SumHelper.getSum(this.elements) :
-                SumHelper.getParallelSum(this.elements);
+        this.sum = Kernels.sum(this.storage.unordered());
 
         return this.sum;
     }
@@ -1114,7 +1308,7 @@ public class Vector {
     public Long getMode() {
         if (this.minimum != null && this.maximum != null && (this.reversed || this.stable)) {
 
-            if (this.minimum > this.maximum && this.maximum == this.elements[0] && this.minimum == this.elements[length-1]) {
+            if (this.minimum > this.maximum && this.maximum == this.storage.get(0) && this.minimum == this.storage.get(length-1)) {
                 Long tmp = this.minimum;
                 this.minimum = null;
                 Long min2 = this.getMinimum();
@@ -1139,14 +1333,14 @@ public class Vector {
 
         // we already know the mode, so shortcut
         if (this.length == 1) {
-            this.mode = this.elements[0];
+            this.mode = this.storage.get(0);
             return this.mode;
         }
 
         // shortcut once more
         if (this.length == 2) {
-            if (this.elements[0] == this.elements[1]) {
-                this.mode = this.elements[0];
+            if (this.storage.get(0) == this.storage.get(1)) {
+                this.mode = this.storage.get(0);
             } else {
                 this.mode = (long)-1;
             }
@@ -1166,7 +1360,7 @@ public class Vector {
 
         // random can only be 0-100, dohoho, 24x faster than a hashmap for 10m elements!
         if ((this.random && this.minimum >= 0) || (this.minimum == null && this.getMinimum() >= 0)) {
-            if (this.maximum != null && this.stable && this.maximum != this.elements[length-1]) {
+            if (this.maximum != null && this.stable && this.maximum != this.storage.get(length-1)) {
                 this.maximum = null;
             }
             this.getMaximum();
@@ -1182,9 +1376,17 @@ public class Vector {
             long maxCount = 0;
             long currentMode = -1L;
 
+            Storage values = this.storage.unordered();
+            long[] elements = new long[(int) Math.min(this.length, readBlock)];
+
             // count the frequency
-            for (long l = 0; l < this.length; l++) {
-                freq[(int) this.elements[(int) l]]++;
+            for (long from = 0; from < this.length; from += elements.length) {
+                int count = (int) Math.min(elements.length, this.length - from);
+                values.read(from, elements, 0, count);
+
+                for (int l = 0; l < count; l++) {
+                    freq[(int) elements[l]]++;
+                }
             }
 
             for ( int i = 0; i <= upper; i++ ) {
@@ -1203,29 +1405,11 @@ public class Vector {
             return this.mode;
         }
 
-        // do it the long way with a frequency map
-        Map<Long,Integer> fm = new HashMap<>();
-
-        int maxCount = 0;
-        long currentMode = 0;
-
-        // create a hash map for each unique value and store their frequency in it (memory is cheap!)
-        for ( int i = 0; i < this.length; i++ ) {
-            long l = this.elements[i];
-            fm.put( l, fm.get(l) == null ? 1 : fm.get(l)+1 );
-            Integer tmp = fm.get(l);
-
-            if (maxCount <= tmp) {
-                if (maxCount != tmp) {
-                    currentMode = l;
-                    maxCount = tmp;
-                } else {
-                    currentMode = -1L;
-                }
-            }
-        }
+        // do it the long way, every piece counts into a table of its own and the tables are merged
+        LongCounts counts = Kernels.collect(this.storage.unordered(), LongCounts::new,
+                                            LongCounts::count, LongCounts::merge);
 
-        this.mode = currentMode;
+        this.mode = counts.mode();
 
         return this.mode;
     }
@@ -1247,24 +1431,24 @@ public class Vector {
         }
 
         if (length == 1) {
-            this.median = this.elements[0];
+            this.median = this.storage.get(0);
             return this.median;
         }
 
-        Vector vector;
-
         if (!this.stable) {
-            // get a sorted clone
-            vector = this.sorted();
-        } else {
-            vector = this;
+            // selected in a few counting passes, sorting a copy just to read one element costs far more,
+            // and so would two passes for bounds select finds out by itself
+            this.median = Kernels.select(this.storage.unordered(), this.length / 2,
+                    (this.minimum != null) ? this.minimum : Long.MIN_VALUE,
+                    (this.maximum != null) ? this.maximum : Long.MAX_VALUE);
+            return this.median;
         }
 
         // get the upper median, which is index length/2 for even, and length/2+1 for odd
         if (this.reversed) {
-            this.median  = vector.elements[length % 2 == 0 ? (length/2)-1 : length/2];
+            this.median  = this.storage.get(length % 2 == 0 ? (length/2)-1 : length/2);
         } else {
-            this.median = vector.elements[length / 2];
+            this.median = this.storage.get(length / 2);
         }
 
         return this.median;
@@ -1285,12 +1469,17 @@ public class Vector {
         }
 
         if (length == 1) {
-            this.minimum = this.elements[0];
+            this.minimum = this.storage.get(0);
+            return this.minimum;
+        }
+
+        this.minimum = this.storage.minimum();
+        if (this.minimum != null) {
             return this.minimum;
         }
 
         // a bit faster than naive approach of sorting and picking lowest element
-        this.minimum = LongStream.of(this.elements).parallel().min().getAsLong();
+        this.minimum = Kernels.minimum(this.storage.unordered());
 
         return this.minimum;
     }
@@ -1311,12 +1500,17 @@ public class Vector {
         }
 
         if (length == 1) {
-            this.maximum = this.elements[0];
+            this.maximum = this.storage.get(0);
+            return this.maximum;
+        }
+
+        this.maximum = this.storage.maximum();
+        if (this.maximum != null) {
             return this.maximum;
         }
 
         // a bit faster than naive approach of sorting and picking highest element
-        this.maximum = LongStream.of(this.elements).parallel().max().getAsLong();
+        this.maximum = Kernels.maximum(this.storage.unordered());
 
         return this.maximum;
     }
@@ -1331,194 +1525,596 @@ public class Vector {
             [1 1 1 1] 1 => 4
         */
 
-        // cost of creating threads plus counting is less than counting single threaded about here
-        long minParallel = 1400*1000;
+        Long count = this.storage.frequency(value);
+        if (count != null) {
+            return count;
+        }
 
-        return (this.length < minParallel) ? FrequencyHelper.getFrequency(this.elements, value) :
-                FrequencyHelper.getParallelFrequency(this.elements, value);
-    }
+        // the first question builds the index, later ones only look it up
+        if (this.frequencies == null) {
+            this.frequencies = this.frequencyIndex();
+        }
 
-    // ===========================================================================
-    // DISPLAY OPERATIONS
-    // ===========================================================================
+        return this.frequencies.applyAsLong(value);
+    }
 
     /**
-     * Displays the vector.
+     * Returns the quickest way to answer frequency questions again and again.
+     * Elements in order are searched, others counted up front unless they
+     * hold too many distinct values to keep counts for.
      */
-    public void display() {
-        // 100k elements - 1.6s for printing each, avg 0.45s for printing one string
-        StringBuilder sb = new StringBuilder();
+    private LongUnaryOperator frequencyIndex() {
+
+        if (this.stable) {
+            // the flags are not always right about the direction, so the elements have the final word
+            Order order = Kernels.collect(this.storage, Order::new, Order::collect, Order::merge);
 
-        for ( int i = 0; i < this.length; i++ ) {
-            sb.append(String.format("%d ", this.elements[i]));
+            if (order.ascending || order.descending) {
+                boolean ascending = order.ascending;
+
+                return value -> this.rank(value, ascending, false) - this.rank(value, ascending, true);
+            }
         }
 
-        // trim tailing space
-        sb.setLength(sb.length()-1);
-        System.out.println(sb.toString());
+        long base = (this.minimum != null) ? this.minimum : 0;
+        LongCounts counts = LongCounts.of(this.storage.unordered(), base, frequencyLimit);
+
+        if (counts != null) {
+            return counts::get;
+        }
+
+        return value -> Kernels.frequency(this.storage.unordered(), value);
     }
 
     /**
-     * Displays the element at the specified index.
+     * Returns how many elements come before the run of value, or before
+     * whatever follows it when not inclusive, in elements running the given way.
      */
-    public void displayElement(int index) {
+    private long rank(long value, boolean ascending, boolean inclusive) {
+        long low = 0;
+        long high = this.length;
 
-        System.out.printf( "%d\n", this.elements[index] );
-    }
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            long element = this.storage.get(middle);
 
-    // ===========================================================================
-    // ACCESSOR METHODS
-    // ===========================================================================
+            boolean before = ascending ? (inclusive ? element < value : element <= value)
+                                       : (inclusive ? element > value : element >= value);
+
+            if (before) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
 
     /**
-     * Returns the vector length.
+     * Which way the elements of a piece run.
      */
-    public int getLength() {
+    private static final class Order {
+        boolean empty = true;
+        long first;
+        long last;
+        boolean ascending = true;
+        boolean descending = true;
+
+        void collect(long[] elements, int from, int to) {
+            for (int i = from; i < to; i++) {
+                long value = elements[i];
+
+                if (this.empty) {
+                    this.first = value;
+                    this.empty = false;
+                } else {
+                    this.ascending &= this.last <= value;
+                    this.descending &= this.last >= value;
+                }
 
-        return this.length;
+                this.last = value;
+            }
+        }
+
+        Order merge(Order right) {
+            if (right.empty) {
+                return this;
+            }
+            if (this.empty) {
+                return right;
+            }
+
+            this.ascending &= right.ascending && this.last <= right.first;
+            this.descending &= right.descending && this.last >= right.first;
+            this.last = right.last;
+
+            return this;
+        }
     }
 
     /**
-     * Returns the vector elements.
+     * Returns the sum of the elements from index from up to, not including, to.
      */
-    public long[] getElements() {
+    public long getSum(long from, long to) {
+        /*
+            [1 2 3 4] 0 4 => 10
+            [1 2 3 4] 1 3 => 5
+        */
+
+        if (from == 0 && to == this.length) {
+            return this.getSum();
+        }
 
-        return this.elements;
+        return this.rangeIndex().sum(this.storage, from, to);
     }
-}
 
-// reference: http://eddmann.com/posts/parallel-summation-in-java/
-// helper class for threading sums
-class SumHelper extends Thread {
-    private long[] elements;
-    private long sumPart;
-    private int start, end;
+    /**
+     * Returns the smallest of the elements from index from up to, not including, to.
+     */
+    public long getMinimum(long from, long to) {
+        /*
+            [4 3 2 1] 0 4 => 1
+            [4 3 2 1] 0 2 => 3
+        */
+
+        if (from == 0 && to == this.length) {
+            return this.getMinimum();
+        }
 
-    public SumHelper(long[] elements, int start, int end) {
-        this.elements = elements;
-        this.start = start;
-        this.end = (end > elements.length) ? elements.length : end;
+        return this.rangeIndex().minimum(this.storage, from, to);
     }
 
-    public long getPartialSum() {
-        return sumPart;
+    /**
+     * Returns the largest of the elements from index from up to, not including, to.
+     */
+    public long getMaximum(long from, long to) {
+        /*
+            [1 2 3 4] 0 4 => 4
+            [1 2 3 4] 0 2 => 2
+        */
+
+        if (from == 0 && to == this.length) {
+            return this.getMaximum();
+        }
+
+        return this.rangeIndex().maximum(this.storage, from, to);
     }
 
-    public void run() {
-        sumPart = SumHelper.getSum(this.elements, this.start, this.end);
+    private RangeIndex rangeIndex() {
+
+        if (this.ranges == null) {
+            this.ranges = new RangeIndex();
+        }
+
+        return this.ranges;
     }
 
-    public static long getSum(long[] elements) {
-        return getSum(elements, 0, elements.length);
+    /**
+     * Returns the number of distinct values in the vector.
+     */
+    public Long getDistinct() {
+        /*
+            [1 1 1 1] => 1
+            [1 2 2 4] => 3
+        */
+
+        if (this.distinct == null) {
+            this.computeStatistics();
+        }
+
+        return this.distinct;
     }
 
-    public static long getSum(long[] elements, int start, int end) {
-        long sum = 0;
+    /**
+     * Works out the sum, minimum, maximum, mode, median and distinct count
+     * together. One sweep over the elements counts every value and checks
+     * their order as it goes, the mode, median and distinct count then follow
+     * from the counts. Elements with too many distinct values for counting
+     * take a second pass: a walk over them when the sweep found them in
+     * order, otherwise a sort of a copy and a walk over that.
+     */
+    public void computeStatistics() {
+
+        if (this.sum != null && this.minimum != null && this.maximum != null &&
+                this.mode != null && this.median != null && this.distinct != null) {
+            return;
+        }
+
+        if (this.uniform || this.length == 1) {
+            this.getSum();
+            this.getMode();
+            this.getMedian();
+            this.getMinimum();
+            this.getMaximum();
+            this.distinct = 1L;
+            return;
+        }
+
+        // a vector flagged sorted is swept in order so the flags get checked, any order does for the rest
+        Storage elements = this.stable ? this.storage : this.storage.unordered();
+        Statistics statistics = Kernels.collect(elements, Statistics::new, Statistics::collect, Statistics::merge);
+        boolean ordered = statistics.ascending || statistics.descending;
+
+        if (this.stable && !ordered) {
+            // the flags are not always right about the order, nothing may take the elements for sorted any more
+            this.stable = false;
+            this.reversed = false;
+        }
+
+        if (statistics.counts != null) {
+            statistics.countsDone(this.length);
+            this.fill(statistics);
+
+            // the counts answer frequency questions from now on
+            this.frequencies = statistics.counts::get;
+            return;
+        }
+
+        // too many distinct values, runs of equal values in sorted elements tell the rest
+        Storage sorted = ordered ? elements : Storage.sortedCopyOf(elements);
+        Statistics runs = Statistics.ofSorted(sorted);
+
+        statistics.distinct = runs.distinct;
+        statistics.mode = runs.mode;
+        // a sorted copy is ascending
+        boolean descending = ordered && !statistics.ascending;
+        statistics.median = sorted.get(descending ? (this.length - 1) / 2 : this.length / 2);
+
+        this.fill(statistics);
 
-        for (int i = start; i < end; i++) {
-            sum += elements[i];
+        if (!ordered) {
+            sorted.release();
         }
+    }
+
+    /**
+     * Caches whatever counting sort learned that was not known yet.
+     */
+    private void fill(CountingSort.Result counted) {
 
-        return sum;
+        this.sum = (this.sum != null) ? this.sum : Long.valueOf(counted.sum);
+        this.mode = (this.mode != null) ? this.mode : Long.valueOf(counted.mode);
+        this.median = (this.median != null) ? this.median : Long.valueOf(counted.median);
+        this.distinct = counted.distinct;
     }
 
-    public static long getParallelSum(long[] elements) {
-        return SumHelper.getParallelSum(elements, Vector.rtThreadCount);
+    /**
+     * Caches the statistics, over whatever was cached before: they were
+     * measured on every element, while cached values are sometimes carried
+     * over from operands and not always right.
+     */
+    private void fill(Statistics statistics) {
+
+        this.sum = statistics.sum;
+        this.minimum = statistics.minimum;
+        this.maximum = statistics.maximum;
+        this.mode = statistics.mode;
+        this.median = (statistics.median != null) ? statistics.median : this.median;
+        this.distinct = statistics.distinct;
     }
 
-    public static long getParallelSum(long[] elements, int threadCount) {
-        int length = (int) Math.ceil((double)elements.length / threadCount);
+    /**
+     * What one sweep over the elements learns about them.
+     */
+    private static final class Statistics {
+        // past this many distinct values the counts are dropped, sorting is cheaper then
+        private static final int countLimit = 1 << 16;
+
+        long sum = 0;
+        long minimum = Long.MAX_VALUE;
+        long maximum = Long.MIN_VALUE;
+        // null once there are too many distinct values
+        LongCounts counts = new LongCounts();
+
+        // the order of the elements swept, both stay true for equal elements
+        boolean empty = true;
+        long first;
+        long last;
+        boolean ascending = true;
+        boolean descending = true;
+
+        long distinct;
+        long mode;
+        // null when the sweep could not tell
+        Long median;
+
+        void collect(long[] elements, int from, int to) {
+            if (from >= to) {
+                return;
+            }
+
+            if (this.empty) {
+                this.first = elements[from];
+                this.last = elements[from];
+                this.empty = false;
+            }
+
+            long sum = this.sum;
+            long minimum = this.minimum;
+            long maximum = this.maximum;
+            long last = this.last;
+            boolean ascending = this.ascending;
+            boolean descending = this.descending;
+            int i = from;
+
+            for (LongCounts counts = this.counts; counts != null && i < to; i++) {
+                long value = elements[i];
+
+                sum += value;
+                minimum = Math.min(minimum, value);
+                maximum = Math.max(maximum, value);
+                ascending &= last <= value;
+                descending &= last >= value;
+                last = value;
+
+                counts.add(value, 1);
+                if (counts.distinct() > countLimit) {
+                    this.counts = null;
+                    counts = null;
+                }
+            }
+
+            for (; i < to; i++) {
+                long value = elements[i];
 
-        SumHelper[] sumThreads = new SumHelper[threadCount];
+                sum += value;
+                minimum = Math.min(minimum, value);
+                maximum = Math.max(maximum, value);
+                ascending &= last <= value;
+                descending &= last >= value;
+                last = value;
+            }
 
-        for (int i = 0; i < threadCount; i++) {
-            sumThreads[i] = new SumHelper(elements, i * length, (i+1) * length);
-            sumThreads[i].start();
+            this.sum = sum;
+            this.minimum = minimum;
+            this.maximum = maximum;
+            this.last = last;
+            this.ascending = ascending;
+            this.descending = descending;
         }
 
-        try {
-            for (SumHelper thr : sumThreads) {
-                thr.join();
+        Statistics merge(Statistics other) {
+            if (other.empty) {
+                return this;
+            }
+            if (this.empty) {
+                return other;
+            }
+
+            this.ascending &= other.ascending && this.last <= other.first;
+            this.descending &= other.descending && this.last >= other.first;
+            this.last = other.last;
+
+            this.sum += other.sum;
+            this.minimum = Math.min(this.minimum, other.minimum);
+            this.maximum = Math.max(this.maximum, other.maximum);
+
+            if (this.counts == null || other.counts == null) {
+                this.counts = null;
+            } else {
+                this.counts = this.counts.merge(other.counts);
+                this.counts = (this.counts.distinct() > countLimit) ? null : this.counts;
             }
-        } catch (InterruptedException e) {
-            //System.out.printf("caught an InterruptedException\n");
+
+            return this;
         }
 
-        long sum = 0;
+        /**
+         * Works out the mode, upper median and distinct count of all length
+         * elements from the counts.
+         */
+        void countsDone(long length) {
+            long[] values = new long[this.counts.distinct()];
+            int[] next = { 0 };
+
+            this.counts.forEach((value, count) -> values[next[0]++] = value);
+
+            Arrays.sort(values);
+
+            long seen = 0;
+            for (long value : values) {
+                seen += this.counts.get(value);
+
+                if (seen > length / 2) {
+                    this.median = value;
+                    break;
+                }
+            }
 
-        for (SumHelper thr : sumThreads) {
-            sum += thr.getPartialSum();
+            this.distinct = values.length;
+            this.mode = this.counts.mode();
         }
 
-        return sum;
+        /**
+         * Walks elements sorted either way once, equal values are then always
+         * next to each other. Leaves the median to the caller.
+         */
+        static Statistics ofSorted(Storage sorted) {
+            Statistics statistics = new Statistics();
+            long length = sorted.length();
+            long[] elements = new long[(int) Math.min(length, readBlock)];
+
+            long previous = 0;
+            long run = 0;
+            long best = 0;
+
+            statistics.counts = null;
+            statistics.mode = -1;
+
+            for (long from = 0; from < length; from += elements.length) {
+                int count = (int) Math.min(elements.length, length - from);
+                sorted.read(from, elements, 0, count);
+
+                statistics.collect(elements, 0, count);
+
+                for (int i = 0; i < count; i++) {
+                    if (run > 0 && elements[i] == previous) {
+                        run++;
+                        continue;
+                    }
+
+                    // a run ended, a run as long as the longest one means there is no mode
+                    if (run > best) {
+                        best = run;
+                        statistics.mode = previous;
+                    } else if (run == best && run > 0) {
+                        statistics.mode = -1;
+                    }
+
+                    statistics.distinct++;
+                    previous = elements[i];
+                    run = 1;
+                }
+            }
+
+            if (run > best) {
+                statistics.mode = previous;
+            } else if (run == best) {
+                statistics.mode = -1;
+            }
+
+            return statistics;
+        }
     }
-}
 
+    // ===========================================================================
+    // DISPLAY OPERATIONS
+    // ===========================================================================
 
-// single threaded frequency becomes slower at around 3m elements
-class FrequencyHelper extends Thread {
-    private long[] elements;
-    private long countPart;
-    private long value;
-    private int start, end;
+    /**
+     * Displays the vector.
+     */
+    public void display() {
+        // 100k elements - 1.6s for printing each, avg 0.45s for printing one string
+        StringBuilder sb = new StringBuilder();
+        long[] elements = new long[(int) Math.min(this.length, readBlock)];
+
+        // read out a block at a time, a single get can cost far more than one element, e.g. when packed
+        for (long from = 0; from < this.length; from += elements.length) {
+            int count = (int) Math.min(elements.length, this.length - from);
+            this.storage.read(from, elements, 0, count);
+
+            for (int i = 0; i < count; i++) {
+                sb.append(String.format("%d ", elements[i]));
+            }
+        }
 
-    public FrequencyHelper(long[] elements, long value, int start, int end) {
-        this.elements = elements;
-        this.start = start;
-        this.end = (end > elements.length) ? elements.length : end;
-        this.value = value;
+        // trim tailing space
+        sb.setLength(sb.length()-1);
+        System.out.println(sb.toString());
     }
 
-    public long getPartialFrequency() {
-        return countPart;
+    /**
+     * Displays the element at the specified index.
+     */
+    public void displayElement(long index) {
+
+        System.out.printf( "%d\n", this.storage.get(index) );
     }
 
-    public void run() {
-        countPart = FrequencyHelper.getFrequency(this.elements, this.value, this.start, this.end);
+    // ===========================================================================
+    // ACCESSOR METHODS
+    // ===========================================================================
+
+    /**
+     * Returns the vector length.
+     */
+    public long getLength() {
+
+        return this.length;
     }
 
-    public static long getFrequency(long[] elements, long value) {
-        return getFrequency(elements, value, 0, elements.length);
+    /**
+     * Computes the elements of a deferred vector now, in one fused pass.
+     */
+    public void materialize() {
+
+        if (this.storage.isDeferred()) {
+            this.replaceStorage(Storage.copyOf(this.storage));
+            this.compress();
+        }
     }
 
-    public static long getFrequency(long[] elements, long value, int start, int end) {
-        long count = 0;
+    /**
+     * Swaps the freshly stored elements of an ascending vector for their
+     * compressed form, when vectors are kept compressed and it saves space.
+     */
+    private void compress() {
 
-        for (int i = start; i < end; i++) {
-            count = (elements[i] == value) ? count + 1 : count;
+        if (!Storage.isCompressed() || !this.stable || this.reversed) {
+            return;
         }
 
-        return count;
+        Storage packed = PackedStorage.pack(this.storage);
+        if (packed != null) {
+            this.replaceStorage(packed);
+        }
     }
 
-    public static long getParallelFrequency(long[] elements, long value) {
-        return FrequencyHelper.getParallelFrequency(elements, value, Vector.rtThreadCount);
+    /**
+     * Hands back the memory of a vector that is no longer used,
+     * unless another vector still shares it.
+     */
+    public void release() {
+
+        if (this.ranges != null) {
+            this.ranges.release();
+        }
+
+        this.storage.release();
     }
 
-    public static long getParallelFrequency(long[] elements, long value, int threadCount) {
-        int length = (int) Math.ceil((double)elements.length / threadCount);
+    /**
+     * Writes the vector and whatever is known about it to the file,
+     * returns whether it worked.
+     */
+    public boolean save(String file) {
 
-        FrequencyHelper[] freqThreads = new FrequencyHelper[threadCount];
+        int flags = (this.stable   ? VectorFile.flagStable   : 0) |
+                    (this.reversed ? VectorFile.flagReversed : 0) |
+                    (this.uniform  ? VectorFile.flagUniform  : 0) |
+                    (this.random   ? VectorFile.flagRandom   : 0);
 
-        for (int i = 0; i < threadCount; i++) {
-            freqThreads[i] = new FrequencyHelper(elements, value, i * length, (i+1) * length);
-            freqThreads[i].start();
-        }
+        Long[] stats = { this.sum, this.mode, this.median, this.minimum, this.maximum };
 
-        try {
-            for (FrequencyHelper thr : freqThreads) {
-                thr.join();
-            }
-        } catch (InterruptedException e) {
-            //System.out.printf("caught an InterruptedException\n");
-        }
+        return VectorFile.save(file, flags, stats, this.storage);
+    }
 
-        long count = 0;
+    /**
+     * Returns the vector saved in the file, its elements mapped rather than
+     * read in, or null when the file holds no vector.
+     */
+    public static Vector load(String file) {
 
-        for (FrequencyHelper thr : freqThreads) {
-            count += thr.getPartialFrequency();
+        VectorFile.Loaded loaded = VectorFile.load(file);
+        if (loaded == null) {
+            return null;
         }
 
-        return count;
+        Vector vector = new Vector(loaded.storage.length(), loaded.storage);
+
+        vector.stable   = (loaded.flags & VectorFile.flagStable)   != 0;
+        vector.reversed = (loaded.flags & VectorFile.flagReversed) != 0;
+        vector.uniform  = (loaded.flags & VectorFile.flagUniform)  != 0;
+        vector.random   = (loaded.flags & VectorFile.flagRandom)   != 0;
+
+        vector.sum     = loaded.stats[0];
+        vector.mode    = loaded.stats[1];
+        vector.median  = loaded.stats[2];
+        vector.minimum = loaded.stats[3];
+        vector.maximum = loaded.stats[4];
+
+        return vector;
+    }
+
+    /**
+     * Switches the vector to new storage, letting go of the old one.
+     */
+    private void replaceStorage(Storage storage) {
+        Storage old = this.storage;
+
+        this.storage = storage;
+        old.release();
     }
 }
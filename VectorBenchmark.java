@@ -0,0 +1,439 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Micro benchmarks for the hot paths of the engine.
+ *
+ * Usage: java VectorBenchmark <name>
+ */
+public class VectorBenchmark {
+
+    // keeps the jit from discarding the work
+    static long blackhole;
+
+    /**
+     * Runs the task repeatedly and returns the average nanoseconds per call.
+     */
+    static double time(int warmup, int runs, Runnable task) {
+        for (int i = 0; i < warmup; i++) {
+            task.run();
+        }
+
+        long begin = System.nanoTime();
+
+        for (int i = 0; i < runs; i++) {
+            task.run();
+        }
+
+        return (double) (System.nanoTime() - begin) / runs;
+    }
+
+    /**
+     * Reference trial division, the fallback used before miller rabin.
+     */
+    static boolean isPrimeTrialDivision(long number) {
+        if (number < 2) {
+            return false;
+        }
+
+        if (number == 2 || number == 3) {
+            return true;
+        }
+
+        if (number % 2 == 0 || number % 3 == 0) {
+            return false;
+        }
+
+        for (long i = 5; (i*i) <= number; i+=6) {
+            if (number % i == 0 || number % (i+2) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Per call latency of the out of cache primality test.
+     */
+    static void primality() {
+        long[] magnitudes = { 1000L * 1000 * 1000, 1000L * 1000 * 1000 * 1000, 1000L * 1000 * 1000 * 1000 * 1000 * 1000 };
+
+        System.out.printf("%-8s %-22s %14s %14s\n", "n", "first prime >= n", "miller-rabin", "trial div");
+
+        for (long n : magnitudes) {
+            long p = n;
+            while (! MillerRabin.isPrime(p)) {
+                p++;
+            }
+
+            final long prime = p;
+            // a block of consecutive values mixes cheap composites with the odd expensive prime
+            final long[] block = new long[1024];
+            for (int i = 0; i < block.length; i++) {
+                block[i] = n + i;
+            }
+
+            double mr = time(2000, 20000, () -> blackhole += MillerRabin.isPrime(prime) ? 1 : 0);
+            double mrBlock = time(20, 200, () -> {
+                for (long v : block) {
+                    blackhole += MillerRabin.isPrime(v) ? 1 : 0;
+                }
+            }) / block.length;
+
+            // trial division on a prime near 10^18 takes seconds, skip it
+            String td = "-";
+            if (n <= 1000L * 1000 * 1000 * 1000) {
+                td = String.format("%.0f ns", time(2, 20, () -> blackhole += isPrimeTrialDivision(prime) ? 1 : 0));
+            }
+
+            System.out.printf("%-8s %-22d %11.0f ns %14s\n", String.format("1e%d", (int) Math.log10(n)), prime, mr, td);
+            System.out.printf("%-8s %-22s %11.0f ns\n", "", "(avg over next 1024)", mrBlock);
+        }
+    }
+
+    /**
+     * Runs the task inside a pool of the given size, parallel streams started
+     * from within a pool stay in that pool.
+     */
+    static double timeInPool(int threads, int warmup, int runs, Runnable task) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+
+        try {
+            return pool.submit(() -> time(warmup, runs, task)).get();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Rebuilds the 30M entry prime, pq and abundant caches with 1, 2, 4 ... threads.
+     */
+    static void sieves() {
+        Runnable prime = () -> {
+            Vector.primeCache = null;
+            Vector.cacheSizePr = Vector.cacheLimitPr;
+            Vector.initializePrimeCache(Vector.cacheMaxPr, 0);
+        };
+
+        Runnable pq = () -> {
+            Vector.pqCache = null;
+            Vector.initializePQCache(Vector.cacheMaxPq, 0);
+        };
+
+        Runnable abundant = () -> {
+            Vector.abundantCache = null;
+            Vector.cacheSizeAb = Vector.cacheLimitAb;
+            Vector.initializeAbundantCache(Vector.cacheMaxAb, 0);
+        };
+
+        System.out.printf("%-8s %14s %14s %14s\n", "threads", "prime", "pq", "abundant");
+
+        double[] base = null;
+
+        for (int threads = 1; threads <= Vector.rtThreadCount; threads *= 2) {
+            double[] ms = {
+                timeInPool(threads, 2, 5, prime) / 1e6,
+                timeInPool(threads, 2, 5, pq) / 1e6,
+                timeInPool(threads, 1, 3, abundant) / 1e6
+            };
+
+            if (base == null) {
+                base = ms;
+            }
+
+            System.out.printf("%-8d %8.1f ms %3.1fx %8.1f ms %3.1fx %8.1f ms %3.1fx\n", threads,
+                    ms[0], base[0] / ms[0], ms[1], base[1] / ms[1], ms[2], base[2] / ms[2]);
+
+            // make sure the full machine is measured even when it is not a power of two
+            if (threads < Vector.rtThreadCount && threads * 2 > Vector.rtThreadCount) {
+                threads = Vector.rtThreadCount / 2;
+            }
+        }
+    }
+
+    /**
+     * Sums, counts and materializes 20M elements with 1, 2, 4 ... threads.
+     */
+    static void kernels() {
+        final int length = 20 * 1000 * 1000;
+        final Random random = new Random(1);
+        final long[] elements = new long[length];
+
+        for (int i = 0; i < length; i++) {
+            elements[i] = random.nextInt(101);
+        }
+
+        // the array is read in place, the expression a block at a time
+        final Storage array = new ArrayStorage(elements);
+        final Storage expression = new ExpressionStorage(ExpressionStorage.multiply, array, 3);
+
+        Runnable sum = () -> blackhole += Kernels.sum(array);
+        Runnable frequency = () -> blackhole += Kernels.frequency(array, 42);
+        Runnable blocks = () -> blackhole += Kernels.sum(expression);
+        Runnable materialize = () -> blackhole += Storage.copyOf(expression).get(length - 1);
+
+        System.out.printf("%-8s %14s %14s %14s %14s\n", "threads", "sum", "frequency", "sum (expr)", "materialize");
+
+        double[] base = null;
+
+        for (int threads = 1; threads <= Vector.rtThreadCount; threads *= 2) {
+            double[] ms = {
+                timeInPool(threads, 5, 20, sum) / 1e6,
+                timeInPool(threads, 5, 20, frequency) / 1e6,
+                timeInPool(threads, 5, 20, blocks) / 1e6,
+                timeInPool(threads, 2, 10, materialize) / 1e6
+            };
+
+            if (base == null) {
+                base = ms;
+            }
+
+            System.out.printf("%-8d %8.1f ms %3.1fx %8.1f ms %3.1fx %8.1f ms %3.1fx %8.1f ms %3.1fx\n", threads,
+                    ms[0], base[0] / ms[0], ms[1], base[1] / ms[1], ms[2], base[2] / ms[2], ms[3], base[3] / ms[3]);
+
+            // make sure the full machine is measured even when it is not a power of two
+            if (threads < Vector.rtThreadCount && threads * 2 > Vector.rtThreadCount) {
+                threads = Vector.rtThreadCount / 2;
+            }
+        }
+    }
+
+    /**
+     * Plain against SIMD loops on one thread, over runs that fit in L2.
+     */
+    static void simd() {
+        final Kernels.Loops scalar = Kernels.scalarLoops();
+        final Kernels.Loops simd = Kernels.simdLoops();
+
+        if (simd == null) {
+            System.out.printf("SIMD loops not available, compile simd/VectorLoops.java and run with --add-modules jdk.incubator.vector\n");
+            return;
+        }
+
+        final int length = 16 * 1024;
+        final Random random = new Random(1);
+        final long[] a = new long[length];
+        final long[] b = new long[length];
+        final long[] dst = new long[length];
+
+        for (int i = 0; i < length; i++) {
+            a[i] = random.nextInt(101);
+            b[i] = random.nextInt(101);
+        }
+
+        String[] names = { "sum", "minimum", "maximum", "frequency", "scalar#add", "scalar#mul", "vector#add", "vector#mul" };
+        Kernels.Loops[] loops = { scalar, simd };
+        double[][] ns = new double[2][names.length];
+
+        for (int l = 0; l < loops.length; l++) {
+            final Kernels.Loops k = loops[l];
+
+            Runnable[] tasks = {
+                () -> blackhole += k.sum(a, 0, length),
+                () -> blackhole += k.minimum(a, 0, length),
+                () -> blackhole += k.maximum(a, 0, length),
+                () -> blackhole += k.frequency(a, 42, 0, length),
+                () -> { k.add(a, 0, 3, dst, 0, length); blackhole += dst[length - 1]; },
+                () -> { k.multiply(a, 0, 3, dst, 0, length); blackhole += dst[length - 1]; },
+                () -> { k.add(a, 0, b, 0, dst, 0, length); blackhole += dst[length - 1]; },
+                () -> { k.multiply(a, 0, b, 0, dst, 0, length); blackhole += dst[length - 1]; }
+            };
+
+            for (int t = 0; t < tasks.length; t++) {
+                ns[l][t] = time(20000, 20000, tasks[t]) / length;
+            }
+        }
+
+        System.out.printf("%-12s %14s %14s\n", "loop", "plain", "simd");
+
+        for (int t = 0; t < names.length; t++) {
+            System.out.printf("%-12s %8.3f ns/el %8.3f ns/el %5.1fx\n", names[t], ns[0][t], ns[1][t], ns[0][t] / ns[1][t]);
+        }
+    }
+
+    /**
+     * Median by sorting a copy against selecting it in place, at 1M, 10M and
+     * 100M elements of either the random generator's 0 - 100 or any long.
+     * Select starts without bounds, as it does for a vector that knows none.
+     * The 100M sort needs about 2GB of heap, e.g. java -Xmx4g.
+     */
+    static void median() {
+        final int[] lengths = { 1000 * 1000, 10 * 1000 * 1000, 100 * 1000 * 1000 };
+
+        System.out.printf("%-10s %-8s %14s %14s\n", "elements", "values", "sort", "select");
+
+        for (int length : lengths) {
+            for (boolean small : new boolean[] { true, false }) {
+                final Storage storage = Storage.allocate(length);
+                final Random random = new Random(1);
+                final long[] block = new long[4096];
+
+                for (long from = 0; from < length; from += block.length) {
+                    int count = (int) Math.min(block.length, length - from);
+
+                    for (int i = 0; i < count; i++) {
+                        block[i] = small ? random.nextInt(101) : random.nextLong();
+                    }
+                    storage.write(from, block, 0, count);
+                }
+
+                final long rank = length / 2;
+                final int runs = (length >= 100 * 1000 * 1000) ? 2 : 5;
+
+                double sort = time(1, runs, () -> {
+                    Storage sorted = Storage.sortedCopyOf(storage);
+                    blackhole += sorted.get(rank);
+                    sorted.release();
+                }) / 1e6;
+
+                double select = time(1, runs, () -> blackhole += Kernels.select(storage, rank, Long.MIN_VALUE, Long.MAX_VALUE)) / 1e6;
+
+                System.out.printf("%-10d %-8s %11.1f ms %11.1f ms %6.1fx\n", length, small ? "0-100" : "long",
+                        sort, select, sort / select);
+
+                storage.release();
+            }
+        }
+    }
+
+    /**
+     * Comparison sort against the radix sort of sorted(), at 10M and 100M
+     * elements of either the random generator's 0 - 100 or any long. Both
+     * sort a copy. The 100M runs need about 3GB of heap, e.g. java -Xmx4g.
+     */
+    static void sort() {
+        final int[] lengths = { 10 * 1000 * 1000, 100 * 1000 * 1000 };
+
+        System.out.printf("%-10s %-8s %16s %14s\n", "elements", "values", "parallelSort", "radix");
+
+        for (int length : lengths) {
+            for (boolean small : new boolean[] { true, false }) {
+                final Random random = new Random(1);
+                final long[] elements = new long[length];
+
+                for (int i = 0; i < length; i++) {
+                    elements[i] = small ? random.nextInt(101) : random.nextLong();
+                }
+
+                final Storage storage = new ArrayStorage(elements);
+                final int runs = (length >= 100 * 1000 * 1000) ? 2 : 5;
+
+                double comparison = time(1, runs, () -> {
+                    long[] sorted = elements.clone();
+                    Arrays.parallelSort(sorted);
+                    blackhole += sorted[length / 2];
+                }) / 1e6;
+
+                double radix = time(1, runs, () -> blackhole += Storage.sortedCopyOf(storage).get(length / 2)) / 1e6;
+
+                System.out.printf("%-10d %-8s %13.1f ms %11.1f ms %6.1fx\n", length, small ? "0-100" : "long",
+                        comparison, radix, comparison / radix);
+            }
+        }
+    }
+
+    /**
+     * COMPUTE stats in one sweep against the getters one by one, at 20M
+     * elements: values 0 - 100, squares in ascending order, and squares of a
+     * sequence crossing zero. Flags carried over from operands can claim an
+     * order the elements do not have, those squares among them, so the sweep
+     * checks the order itself before walking runs of equal values. That
+     * check rides along in the counting sweep and only costs the compares.
+     */
+    static void stats() {
+        final long length = 20 * 1000 * 1000;
+        final String[] names = { "0-100", "ascending", "unordered" };
+        final int runs = 3;
+
+        System.out.printf("%-10s %14s %14s\n", "elements", "stats", "getters");
+
+        for (int kind = 0; kind < names.length; kind++) {
+            double[] ms = new double[2];
+
+            for (int run = 0; run <= runs; run++) {
+                for (int way = 0; way < 2; way++) {
+                    Vector vector = VectorBenchmark.statsVector(kind, length);
+                    long begin = System.nanoTime();
+
+                    if (way == 0) {
+                        vector.computeStatistics();
+                    } else {
+                        blackhole += vector.getSum() + vector.getMinimum() + vector.getMaximum()
+                                + vector.getMedian() + vector.getMode();
+                    }
+
+                    // the first run warms up
+                    ms[way] += (run > 0) ? (System.nanoTime() - begin) / 1e6 / runs : 0;
+                    vector.release();
+                }
+            }
+
+            System.out.printf("%-10s %11.1f ms %11.1f ms %6.1fx\n", names[kind], ms[0], ms[1], ms[1] / ms[0]);
+        }
+    }
+
+    /**
+     * Returns a vector for stats() with its elements computed, and nothing cached but what they came with
+     */
+    private static Vector statsVector(int kind, long length) {
+        if (kind == 0) {
+            return Vector.random(length, 1);
+        }
+
+        Vector sequence = Vector.sequence(length, (kind == 1) ? 0 : -length / 4, 1);
+        Vector squares = sequence.vectorMultiply(sequence);
+
+        squares.materialize();
+        sequence.release();
+
+        return squares;
+    }
+
+    /**
+     * Main function.
+     */
+    public static void main(String[] args) {
+
+        if (args.length != 1) {
+            System.out.printf("Usage: java VectorBenchmark <name>\n");
+            System.out.printf("       primality\n");
+            System.out.printf("       sieves\n");
+            System.out.printf("       kernels\n");
+            System.out.printf("       simd\n");
+            System.out.printf("       median\n");
+            System.out.printf("       sort\n");
+            System.out.printf("       stats\n");
+            System.exit(1);
+        }
+
+        switch (args[0].toLowerCase()) {
+            case "primality":
+                primality();
+                break;
+            case "sieves":
+                sieves();
+                break;
+            case "kernels":
+                kernels();
+                break;
+            case "simd":
+                simd();
+                break;
+            case "median":
+                median();
+                break;
+            case "sort":
+                sort();
+                break;
+            case "stats":
+                stats();
+                break;
+            default:
+                System.out.printf("unknown benchmark\n");
+                System.exit(1);
+        }
+    }
+}
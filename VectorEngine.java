@@ -3,8 +3,12 @@ import java.util.*;
 
 public class VectorEngine {
 
-	static Integer vectorLength;
+	static Long vectorLength;
 	static Map<String, Vector> vectors;
+	// keep element wise results as expressions until their elements are needed
+	static boolean deferred = false;
+	// results of nested expressions, released once the command using them is done
+	static Deque<Vector> nested = new ArrayDeque<Vector>();
 
 	/**
 	 * Defines settings based on command line arguments.
@@ -15,15 +19,66 @@ public class VectorEngine {
 		vectors = new HashMap<String, Vector>();
 
 		// Attempt to parse the vector length from command line arguments
-		if (args.length != 1) {
-			System.out.printf("Invalid command line arguments\n");
-			System.out.printf("Usage: java VectorEngine <length>\n");
-			System.exit(1);
+		if (args.length < 1) {
+			usage();
+		}
+
+		// Parse the optional settings that follow the length
+		for (int i = 1; i < args.length; i++) {
+			switch (args[i]) {
+				case "--cache":
+					if (i + 1 >= args.length) {
+						usage();
+					}
+					if (!CacheStore.setDirectory(args[++i])) {
+						System.out.printf("Invalid cache directory: %s\n", args[i]);
+						System.exit(1);
+					}
+					break;
+				case "--deferred":
+					deferred = true;
+					break;
+				case "--compress":
+					Storage.setCompressed(true);
+					break;
+				case "--simd":
+					if (i + 1 >= args.length) {
+						usage();
+					}
+					switch (args[++i]) {
+						case "on":
+							Kernels.setSimd(true);
+							break;
+						case "off":
+							Kernels.setSimd(false);
+							break;
+						default:
+							usage();
+					}
+					break;
+				case "--storage":
+					if (i + 1 >= args.length) {
+						usage();
+					}
+					switch (args[++i]) {
+						case "heap":
+							Storage.setOffHeap(false);
+							break;
+						case "offheap":
+							Storage.setOffHeap(true);
+							break;
+						default:
+							usage();
+					}
+					break;
+				default:
+					usage();
+			}
 		}
 
-		// Attempt to convert the vector length to an integer
+		// Attempt to convert the vector length to an integer, it may exceed the range of an int
 		try {
-			vectorLength = Integer.parseInt(args[0]);
+			vectorLength = Long.parseLong(args[0]);
 		} catch (NumberFormatException e) {
 			System.out.printf("Invalid length: vector length must be an integer\n");
 			System.exit(1);
@@ -36,6 +91,16 @@ public class VectorEngine {
 		}
 	}
 
+	/**
+	 * Displays command line usage and terminates the program.
+	 */
+	public static void usage() {
+
+		System.out.printf("Invalid command line arguments\n");
+		System.out.printf("Usage: java VectorEngine <length> [--cache <directory>] [--deferred] [--compress] [--simd on|off] [--storage heap|offheap]\n");
+		System.exit(1);
+	}
+
 	/**
 	 * Terminates the program.
 	 */
@@ -72,6 +137,12 @@ public class VectorEngine {
 		System.out.println("SET <key> = vector#add <vector a> <vector b>");
 		System.out.println("SET <key> = vector#add <vector a> <vector b>");
 		System.out.println("");
+		System.out.println("Any <vector> can also be a nested expression, e.g.");
+		System.out.println("SET <key> = scalar#add (vector#mul <vector a> <vector b>) <value>");
+		System.out.println("");
+		System.out.println("SAVE <key> <file>");
+		System.out.println("LOAD <key> <file>");
+		System.out.println("");
 		System.out.println("SHOW <key>");
 		System.out.println("SHOW <key> <index>");
 		System.out.println("");
@@ -81,6 +152,10 @@ public class VectorEngine {
 		System.out.println("COMPUTE minimum <key>");
 		System.out.println("COMPUTE maximum <key>");
 		System.out.println("COMPUTE frequency <key> <value>");
+		System.out.println("COMPUTE stats <key>");
+		System.out.println("COMPUTE sum <key> <from> <to>");
+		System.out.println("COMPUTE minimum <key> <from> <to>");
+		System.out.println("COMPUTE maximum <key> <from> <to>");
 	}
 
 	/**
@@ -98,22 +173,77 @@ public class VectorEngine {
 	}
 
 	/**
-	 * Set command based on given input.
+	 * Splits a command into tokens, parentheses are tokens of their own.
 	 */
-	public static void setCommand(String line) {
+	public static Deque<String> tokenize(String line) {
 
-		String[] args = line.split(" ");
+		Deque<String> tokens = new ArrayDeque<String>();
 
-		// Ensure argument count is valid
-		if (args.length < 4 || args.length > 6) {
+		for (String token : line.replace("(", " ( ").replace(")", " ) ").trim().split(" +")) {
+			tokens.add(token);
+		}
+
+		return tokens;
+	}
+
+	/**
+	 * Returns vector with given key, or the result of a nested expression.
+	 * Returns null once an error was printed, the rest of the command is
+	 * then left unread.
+	 */
+	public static Vector fetchOperand(Deque<String> tokens) {
+
+		String token = tokens.poll();
+
+		// An operand is missing
+		if (token == null || ")".equals(token)) {
 			System.out.printf("invalid arguments\n");
-			return;
+			return null;
+		}
+
+		if (!"(".equals(token)) {
+			return fetchVector(token);
+		}
+
+		Vector vector = evaluate(tokens);
+		if (vector == null) {
+			return null;
+		}
+
+		// Nested results only live as long as the expression around them
+		nested.push(vector);
+
+		if (!")".equals(tokens.poll())) {
+			System.out.printf("invalid arguments\n");
+			return null;
+		}
+
+		return vector;
+	}
+
+	/**
+	 * Returns the result of the operation at the head of the tokens, or null
+	 * once an error was printed.
+	 */
+	public static Vector evaluate(Deque<String> tokens) {
+
+		try {
+			return evaluateOperation(tokens);
+		} catch (NumberFormatException e) {
+			// A number is missing or is not one
+			System.out.printf("invalid arguments\n");
+			return null;
 		}
+	}
+
+	/**
+	 * Evaluates the operation at the head of the tokens.
+	 */
+	private static Vector evaluateOperation(Deque<String> tokens) {
 
 		Vector v = null;
 		Vector v1 = null;
 		Vector v2 = null;
-		Vector result = null;
 
 		int seed = 0;
 		long step = 0;
@@ -121,95 +251,206 @@ public class VectorEngine {
 		long count = 0;
 		long value = 0;
 
-		String key = args[1];
-		String operation = args[3].toLowerCase();
+		String token = tokens.poll();
+
+		// An operation is missing, e.g. ( )
+		if (token == null || "(".equals(token) || ")".equals(token)) {
+			System.out.printf("invalid arguments\n");
+			return null;
+		}
+
+		String operation = token.toLowerCase();
 
 		switch (operation) {
 			case "random":
-				seed = Integer.parseInt(args[4]);
-				result = Vector.random(vectorLength, seed);
-				break;
+				seed = Integer.parseInt(tokens.poll());
+				return Vector.random(vectorLength, seed);
 			case "uniform":
-				value = Long.parseLong(args[4]);
-				result = Vector.uniform(vectorLength, value);
-				break;
+				value = Long.parseLong(tokens.poll());
+				return Vector.uniform(vectorLength, value);
 			case "sequence":
-				start = Long.parseLong(args[4]);
-				step = Long.parseLong(args[5]);
-				result = Vector.sequence(vectorLength, start, step);
-				break;
+				start = Long.parseLong(tokens.poll());
+				step = Long.parseLong(tokens.poll());
+				return Vector.sequence(vectorLength, start, step);
 
 			case "pq":
-				start = Long.parseLong(args[4]);
-				result = Vector.pq(vectorLength, start);
-				break;
+				start = Long.parseLong(tokens.poll());
+				return Vector.pq(vectorLength, start);
 			case "prime":
-				start = Long.parseLong(args[4]);
-				result = Vector.prime(vectorLength, start);
-				break;
+				start = Long.parseLong(tokens.poll());
+				return Vector.prime(vectorLength, start);
 			case "abundant":
-				start = Long.parseLong(args[4]);
-				result = Vector.abundant(vectorLength, start);
-				break;
+				start = Long.parseLong(tokens.poll());
+				return Vector.abundant(vectorLength, start);
 			case "composite":
-				start = Long.parseLong(args[4]);
-				result = Vector.composite(vectorLength, start);
-				break;
+				start = Long.parseLong(tokens.poll());
+				return Vector.composite(vectorLength, start);
 
 			case "cloned":
-				v = fetchVector(args[4]);
-				if (v == null) return;
-				result = v.cloned();
-				break;
+				v = fetchOperand(tokens);
+				if (v == null) return null;
+				return v.cloned();
 			case "sorted":
-				v = fetchVector(args[4]);
-				if (v == null) return;
-				result = v.sorted();
-				break;
+				v = fetchOperand(tokens);
+				if (v == null) return null;
+				return v.sorted();
 			case "shifted":
-				v = fetchVector(args[4]);
-				if (v == null) return;
-				count = Long.parseLong(args[5]);
-				result = v.shifted(count);
-				break;
+				v = fetchOperand(tokens);
+				if (v == null) return null;
+				count = Long.parseLong(tokens.poll());
+				return v.shifted(count);
 			case "reversed":
-				v = fetchVector(args[4]);
-				if (v == null) return;
-				result = v.reversed();
-				break;
+				v = fetchOperand(tokens);
+				if (v == null) return null;
+				return v.reversed();
 
 			case "scalar#add":
-				v = fetchVector(args[4]);
-				if (v == null) return;
-				value = Long.parseLong(args[5]);
-				result = v.scalarAdd(value);
-				break;
+				v = fetchOperand(tokens);
+				if (v == null) return null;
+				value = Long.parseLong(tokens.poll());
+				return v.scalarAdd(value);
 			case "scalar#mul":
-				v = fetchVector(args[4]);
-				if (v == null) return;
-				value = Long.parseLong(args[5]);
-				result = v.scalarMultiply(value);
-				break;
+				v = fetchOperand(tokens);
+				if (v == null) return null;
+				value = Long.parseLong(tokens.poll());
+				return v.scalarMultiply(value);
 			case "vector#add":
-				v1 = fetchVector(args[4]);
-				v2 = fetchVector(args[5]);
-				if (v1 == null || v2 == null) return;
-				result = v1.vectorAdd(v2);
-				break;
+				v1 = fetchOperand(tokens);
+				if (v1 == null) return null;
+				v2 = fetchOperand(tokens);
+				if (v2 == null) return null;
+				return v1.vectorAdd(v2);
 			case "vector#mul":
-				v1 = fetchVector(args[4]);
-				v2 = fetchVector(args[5]);
-				if (v1 == null || v2 == null) return;
-				result = v1.vectorMultiply(v2);
-				break;
+				v1 = fetchOperand(tokens);
+				if (v1 == null) return null;
+				v2 = fetchOperand(tokens);
+				if (v2 == null) return null;
+				return v1.vectorMultiply(v2);
 
 			default:
 				System.out.printf("invalid operation\n");
-				return;
+				return null;
+		}
+	}
+
+	/**
+	 * Set command based on given input.
+	 */
+	public static void setCommand(String line) {
+
+		Deque<String> tokens = tokenize(line);
+
+		// Ensure argument count is valid, nested expressions may take any number
+		if (tokens.size() < 4 || (tokens.size() > 6 && !tokens.contains("("))) {
+			System.out.printf("invalid arguments\n");
+			return;
+		}
+
+		tokens.poll();
+		String key = tokens.poll();
+		tokens.poll();
+
+		Vector result = evaluate(tokens);
+		if (result == null) {
+			releaseNested();
+			return;
+		}
+
+		// Anything left over was not part of the expression
+		if (!tokens.isEmpty()) {
+			result.release();
+			releaseNested();
+			System.out.printf("invalid arguments\n");
+			return;
+		}
+
+		// Element wise chains are computed here in one pass, unless deferred until needed
+		if (!deferred) {
+			result.materialize();
+		}
+
+		// A deferred result holds on to the elements it still reads
+		releaseNested();
+
+		storeVector(key, result);
+		System.out.printf("ok\n");
+	}
+
+	/**
+	 * Releases the results of nested expressions once the command is done with them.
+	 */
+	public static void releaseNested() {
+
+		while (!nested.isEmpty()) {
+			nested.pop().release();
+		}
+	}
+
+	/**
+	 * Stores the vector under the key, the vector it replaces hands back its memory.
+	 */
+	public static void storeVector(String key, Vector vector) {
+
+		Vector previous = vectors.put(key, vector);
+		if (previous != null && previous != vector) {
+			previous.release();
+		}
+	}
+
+	/**
+	 * Save command based on given input.
+	 */
+	public static void saveCommand(String line) {
+
+		String[] args = line.split(" ");
+
+		// Ensure argument count is valid
+		if (args.length != 3) {
+			System.out.printf("invalid arguments\n");
+			return;
+		}
+
+		// Attempt to fetch vector from map
+		Vector vector = fetchVector(args[1]);
+		if (vector == null) {
+			return;
+		}
+
+		if (!vector.save(args[2])) {
+			System.out.printf("invalid file\n");
+			return;
 		}
 
-		// Store the result
-		vectors.put(key, result);
+		System.out.printf("ok\n");
+	}
+
+	/**
+	 * Load command based on given input.
+	 */
+	public static void loadCommand(String line) {
+
+		String[] args = line.split(" ");
+
+		// Ensure argument count is valid
+		if (args.length != 3) {
+			System.out.printf("invalid arguments\n");
+			return;
+		}
+
+		Vector vector = Vector.load(args[2]);
+		if (vector == null) {
+			System.out.printf("invalid file\n");
+			return;
+		}
+
+		// Every vector of a session has the same length
+		if (vector.getLength() != vectorLength) {
+			vector.release();
+			System.out.printf("invalid length\n");
+			return;
+		}
+
+		storeVector(args[1], vector);
 		System.out.printf("ok\n");
 	}
 
@@ -239,11 +480,11 @@ public class VectorEngine {
 			return;
 		}
 
-		int index = 0;
+		long index = 0;
 
 		// Attempt to parse vector element index
 		try {
-			index = Integer.parseInt(args[2]);
+			index = Long.parseLong(args[2]);
 		} catch (NumberFormatException e) {
 			System.out.printf("invalid index\n");
 			return;
@@ -267,13 +508,18 @@ public class VectorEngine {
 		String[] args = line.split(" ");
 
 		// Ensure argument count is valid
-		if (args.length < 3 || args.length > 4) {
+		if (args.length < 3 || args.length > 5) {
 			System.out.printf("invalid arguments\n");
 			return;
 		}
 
 		String operation = args[1].toLowerCase();
 
+		if (args.length == 5) {
+			computeRangeCommand(operation, args);
+			return;
+		}
+
 		// Attempt to fetch vector from map
 		String key = args[2];
 		Vector vector = fetchVector(key);
@@ -284,6 +530,17 @@ public class VectorEngine {
 		Long result = null;
 
 		switch (operation) {
+			case "stats":
+				// all of them from one sweep, the getters below only read the cache
+				vector.computeStatistics();
+
+				System.out.printf("sum %d\n", vector.getSum());
+				System.out.printf("minimum %d\n", vector.getMinimum());
+				System.out.printf("maximum %d\n", vector.getMaximum());
+				System.out.printf("median %d\n", vector.getMedian());
+				System.out.printf("mode %d\n", vector.getMode());
+				System.out.printf("distinct %d\n", vector.getDistinct());
+				return;
 			case "sum":
 				result = vector.getSum();
 				break;
@@ -316,6 +573,57 @@ public class VectorEngine {
 		}
 	}
 
+	/**
+	 * Computes sum, minimum or maximum over a range of a vector.
+	 */
+	public static void computeRangeCommand(String operation, String[] args) {
+
+		if (!operation.equals("sum") && !operation.equals("minimum") && !operation.equals("maximum")) {
+			System.out.printf("invalid operation\n");
+			return;
+		}
+
+		// Attempt to fetch vector from map
+		Vector vector = fetchVector(args[2]);
+		if (vector == null) {
+			return;
+		}
+
+		long from = 0;
+		long to = 0;
+
+		// Attempt to parse the range
+		try {
+			from = Long.parseLong(args[3]);
+			to = Long.parseLong(args[4]);
+		} catch (NumberFormatException e) {
+			System.out.printf("invalid index\n");
+			return;
+		}
+
+		// Ensure the range is within the vector and not empty
+		if (from < 0 || to > vectorLength || from >= to) {
+			System.out.printf("index out of range\n");
+			return;
+		}
+
+		long result;
+
+		switch (operation) {
+			case "sum":
+				result = vector.getSum(from, to);
+				break;
+			case "minimum":
+				result = vector.getMinimum(from, to);
+				break;
+			default:
+				result = vector.getMaximum(from, to);
+				break;
+		}
+
+		System.out.printf("%d\n", result);
+	}
+
 	/**
 	 * Runs computations and stores vectors based on given input.
 	 */
@@ -347,6 +655,12 @@ public class VectorEngine {
 				case "show":
 					showCommand(line);
 					break;
+				case "save":
+					saveCommand(line);
+					break;
+				case "load":
+					loadCommand(line);
+					break;
 				case "compute":
 					computeCommand(line);
 					break;
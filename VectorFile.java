@@ -0,0 +1,171 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * Single vectors saved to disk. Loading maps the elements read only instead
+ * of reading them in, so it takes about as long for a billion elements as
+ * for ten, and pages are only read once something looks at them.
+ *
+ * File layout, everything in native byte order:
+ *   int magic, int version, int flags, int known, long length,
+ *   long sum, long mode, long median, long minimum, long maximum,
+ *   followed by the elements themselves.
+ * Bit i of known is set when the i-th of the cached values was known.
+ */
+class VectorFile {
+
+    public static final int magic = 0x56454356;
+    // bump whenever the layout changes
+    public static final int version = 1;
+
+    public static final int flagStable = 1;
+    public static final int flagReversed = 2;
+    public static final int flagUniform = 4;
+    public static final int flagRandom = 8;
+
+    // sum, mode, median, minimum, maximum
+    public static final int statCount = 5;
+
+    private static final int headerSize = 64;
+
+    /**
+     * A vector read back from disk
+     */
+    static class Loaded {
+        final int flags;
+        // null where the value was not known when saved
+        final Long[] stats;
+        final Storage storage;
+
+        Loaded(int flags, Long[] stats, Storage storage) {
+            this.flags = flags;
+            this.stats = stats;
+            this.storage = storage;
+        }
+    }
+
+    /**
+     * Maps the vector saved in the file, returns null when it is missing or not a vector file
+     */
+    public static Loaded load(String path) {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            if (channel.size() < headerSize) {
+                return null;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.nativeOrder());
+            channel.read(header, 0);
+            header.flip();
+
+            // a file from another version or another byte order is refused
+            if (header.getInt() != magic || header.getInt() != version) {
+                return null;
+            }
+
+            int flags = header.getInt();
+            int known = header.getInt();
+            long length = header.getLong();
+
+            Long[] stats = new Long[statCount];
+            for (int i = 0; i < statCount; i++) {
+                long value = header.getLong();
+                stats[i] = ((known & (1 << i)) != 0) ? value : null;
+            }
+
+            if (length < 1 || length > (Long.MAX_VALUE - headerSize) / Long.BYTES ||
+                    channel.size() != headerSize + (length * Long.BYTES)) {
+                return null;
+            }
+
+            // the mapping stays valid after the channel is closed
+            return new Loaded(flags, stats, OffHeapStorage.map(channel, headerSize, length));
+        } catch (IOException | InvalidPathException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the elements and what is known about them to the file, returns whether it worked
+     */
+    public static boolean save(String path, int flags, Long[] stats, Storage storage) {
+        Path file;
+        Path temp;
+
+        try {
+            file = Paths.get(path).toAbsolutePath();
+        } catch (InvalidPathException e) {
+            return false;
+        }
+
+        // a temp file of its own next to the target, no other SAVE or file of the user's is touched
+        try {
+            temp = Files.createTempFile(file.getParent(), file.getFileName() + ".", ".tmp");
+        } catch (IOException e) {
+            return false;
+        }
+
+        long length = storage.length();
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+
+            int known = 0;
+            for (int i = 0; i < statCount; i++) {
+                known |= (stats[i] != null) ? 1 << i : 0;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.nativeOrder());
+            header.putInt(magic).putInt(version).putInt(flags).putInt(known).putLong(length);
+            for (int i = 0; i < statCount; i++) {
+                header.putLong((stats[i] != null) ? stats[i] : 0L);
+            }
+            header.flip();
+            channel.write(header);
+
+            // stream the elements through a modest buffer, whatever the storage looks like
+            ByteBuffer chunk = ByteBuffer.allocateDirect(1024 * 1024).order(ByteOrder.nativeOrder());
+            long[] block = new long[chunk.capacity() / Long.BYTES];
+
+            for (long from = 0; from < length; ) {
+                int n = (int) Math.min(block.length, length - from);
+
+                storage.read(from, block, 0, n);
+                chunk.clear();
+                chunk.asLongBuffer().put(block, 0, n);
+
+                chunk.limit(n * Long.BYTES);
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk);
+                }
+
+                from += n;
+            }
+        } catch (IOException e) {
+            VectorFile.delete(temp);
+            return false;
+        }
+
+        // a vector still mapped from the old file keeps reading the old contents
+        try {
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            VectorFile.delete(temp);
+            return false;
+        }
+
+        return true;
+    }
+
+    private static void delete(Path temp) {
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Rotated and/or reversed window onto another storage, nothing is copied.
+ * Element i of the view is element offset + i of the base, wrapping around
+ * at the end, or offset - i when the view walks the base backwards.
+ *
+ * Views of views are folded into a single view of the original base.
+ */
+class ViewStorage extends Storage {
+
+    private final Storage base;
+    private final long offset;
+    private final boolean backwards;
+
+    private ViewStorage(Storage base, long offset, boolean backwards) {
+        super(base.length());
+        this.base = base;
+        this.offset = offset;
+        this.backwards = backwards;
+    }
+
+    /**
+     * Returns the view of base starting at offset, or base itself when nothing moves
+     */
+    public static Storage of(Storage base, long offset, boolean backwards) {
+        long start = Math.floorMod(offset, base.length());
+
+        if (start == 0 && ! backwards) {
+            return base;
+        }
+
+        return new ViewStorage(base, start, backwards);
+    }
+
+    /**
+     * Returns base with every element moved right by amount, wrapping around
+     */
+    public static Storage shift(Storage base, long amount) {
+        return ViewStorage.of(base, -(amount % base.length()), false);
+    }
+
+    /**
+     * Returns base in reverse order
+     */
+    public static Storage reverse(Storage base) {
+        return ViewStorage.of(base, base.length() - 1, true);
+    }
+
+    private long map(long index) {
+        long position = this.backwards ? this.offset - index : this.offset + index;
+        return Math.floorMod(position, this.length);
+    }
+
+    @Override
+    public long get(long index) {
+        return this.base.get(this.map(index));
+    }
+
+    @Override
+    public void read(long from, long[] dst, int offset, int count) {
+        if (count == 0) {
+            return;
+        }
+
+        // backwards views read the same base range forwards and flip it afterwards
+        long first = this.backwards ? this.map(from + count - 1) : this.map(from);
+        int head = (int) Math.min(count, this.length - first);
+
+        this.base.read(first, dst, offset, head);
+        if (head < count) {
+            this.base.read(0, dst, offset + head, count - head);
+        }
+
+        if (this.backwards) {
+            for (int i = offset, j = offset + count - 1; i < j; i++, j--) {
+                long tmp = dst[i];
+                dst[i] = dst[j];
+                dst[j] = tmp;
+            }
+        }
+    }
+
+    @Override
+    public Storage unordered() {
+        return this.base.unordered();
+    }
+
+    @Override
+    public Storage share() {
+        this.base.share();
+        return this;
+    }
+
+    @Override
+    public void release() {
+        this.base.release();
+    }
+
+    @Override
+    public boolean isDeferred() {
+        return this.base.isDeferred();
+    }
+
+    // the order of the elements makes no difference to any of these
+
+    @Override
+    public Long sum() {
+        return this.base.sum();
+    }
+
+    @Override
+    public Long minimum() {
+        return this.base.minimum();
+    }
+
+    @Override
+    public Long maximum() {
+        return this.base.maximum();
+    }
+
+    @Override
+    public Long frequency(long value) {
+        return this.base.frequency(value);
+    }
+
+    @Override
+    public Storage shift(long amount) {
+        // moving the view right moves its start left, which is right in base terms when backwards
+        long moved = amount % this.length;
+        return ViewStorage.of(this.base, this.backwards ? this.offset + moved : this.offset - moved, this.backwards);
+    }
+
+    @Override
+    public Storage reverse() {
+        // the old last element is the new first one
+        return ViewStorage.of(this.base, this.map(this.length - 1), ! this.backwards);
+    }
+}
@@ -0,0 +1,128 @@
+import java.util.Arrays;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Generates increasing number sequences (primes, semiprimes, ...) in parallel.
+ *
+ * The range past the start is cut into windows. Every window is tested
+ * concurrently and its matches are counted, a prefix sum of the counts gives
+ * each window its offset in the output, then every window copies its matches
+ * into place concurrently. The output is identical to a sequential scan.
+ */
+class WindowGenerator {
+
+    /**
+     * Marks bit k of bits for every match at low + k in the window [low, low + span)
+     */
+    interface Filter {
+        void mark(long low, int span, long[] bits);
+    }
+
+    // keeps a few windows per thread in flight so uneven windows still balance
+    private static final int windowsPerThread = 4;
+    // matches are gathered and written to the output this many at a time
+    private static final int writeBlock = 1024;
+
+    private final Filter filter;
+    private final LongBinaryOperator estimate;
+    private final int windowSize;
+    private final long[][] bits;
+    private final long[][] buffers;
+    private final long[] offsets;
+    private final long[] sums;
+
+    /**
+     * Sets up buffers for generating count values from first onwards,
+     * estimate maps (low, count) to how far past low count matches should reach
+     */
+    public WindowGenerator(Filter filter, LongBinaryOperator estimate, int maxWindow, long first, long count) {
+        int windows = Vector.rtThreadCount * windowsPerThread;
+        long expected = estimate.applyAsLong(first, count);
+        // small requests get small windows rather than one mostly empty big one
+        long size = (expected + windows - 1) / windows;
+
+        this.filter = filter;
+        this.estimate = estimate;
+        this.windowSize = (int) Math.min(maxWindow, Math.max(64, (size + 63) & ~63L));
+        this.bits = new long[windows][this.windowSize / 64];
+        this.buffers = new long[windows][writeBlock];
+        this.offsets = new long[windows + 1];
+        this.sums = new long[windows];
+    }
+
+    /**
+     * Fills out with the matches from first onwards, returns the sum of the elements
+     */
+    public long generate(Storage out, long first) {
+        long idx = 0;
+        long sum = 0;
+
+        for (long low = first; idx < out.length(); ) {
+            final long batchLow = low;
+            final long start = idx;
+            final long remaining = out.length() - idx;
+
+            // only launch as many windows as the remaining elements are expected to need
+            long expected = this.estimate.applyAsLong(low, remaining);
+            int windows = (int) Math.min(this.bits.length, Math.max(1, (expected + this.windowSize - 1) / this.windowSize));
+
+            // pass 1, test the windows and count their matches
+            Kernels.forEachTask(windows, w -> {
+                long[] words = this.bits[w];
+                Arrays.fill(words, 0L);
+
+                this.filter.mark(batchLow + (long) w * this.windowSize, this.windowSize, words);
+
+                long count = 0;
+                for (long word : words) {
+                    count += Long.bitCount(word);
+                }
+                this.offsets[w + 1] = count;
+            });
+
+            // prefix sum of the counts gives each window its output offset
+            this.offsets[0] = 0;
+            for (int w = 0; w < windows; w++) {
+                this.offsets[w + 1] += this.offsets[w];
+            }
+
+            // pass 2, copy each window's matches into its slice
+            Kernels.forEachTask(windows, w -> {
+                long pos = this.offsets[w];
+                long partial = 0;
+                long[] words = this.bits[w];
+                long[] buffer = this.buffers[w];
+                long base = batchLow + (long) w * this.windowSize;
+                int filled = 0;
+
+                for (int i = 0; i < words.length && pos < remaining; i++) {
+                    for (long word = words[i]; word != 0 && pos < remaining; word &= word - 1) {
+                        long value = base + ((long) i << 6) + Long.numberOfTrailingZeros(word);
+                        partial += buffer[filled++] = value;
+                        pos++;
+
+                        if (filled == writeBlock) {
+                            out.write(start + pos - filled, buffer, 0, filled);
+                            filled = 0;
+                        }
+                    }
+                }
+
+                // windows past the end of the output have nothing left to write
+                if (filled > 0) {
+                    out.write(start + pos - filled, buffer, 0, filled);
+                }
+                this.sums[w] = partial;
+            });
+
+            for (int w = 0; w < windows; w++) {
+                sum += this.sums[w];
+            }
+
+            idx += Math.min(this.offsets[windows], remaining);
+            low += (long) windows * this.windowSize;
+        }
+
+        return sum;
+    }
+}
@@ -0,0 +1,148 @@
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The innermost loops written against the Java Vector API, a whole register
+ * of elements per step at the widest size the CPU offers, the few elements
+ * left at the end of a run take the plain path.
+ *
+ * Built on its own since the module is still incubating:
+ *   javac --add-modules jdk.incubator.vector -cp . -d . simd/VectorLoops.java
+ * and only picked up when the engine runs with --add-modules jdk.incubator.vector.
+ */
+class VectorLoops implements Kernels.Loops {
+
+    private static final VectorSpecies<Long> species = LongVector.SPECIES_PREFERRED;
+
+    @Override
+    public long sum(long[] elements, int from, int to) {
+        LongVector sums = LongVector.zero(species);
+        int i = from;
+
+        for (int upper = from + species.loopBound(to - from); i < upper; i += species.length()) {
+            sums = sums.add(LongVector.fromArray(species, elements, i));
+        }
+
+        long sum = sums.reduceLanes(VectorOperators.ADD);
+
+        for (; i < to; i++) {
+            sum += elements[i];
+        }
+
+        return sum;
+    }
+
+    @Override
+    public long minimum(long[] elements, int from, int to) {
+        LongVector mins = LongVector.broadcast(species, Long.MAX_VALUE);
+        int i = from;
+
+        for (int upper = from + species.loopBound(to - from); i < upper; i += species.length()) {
+            mins = mins.min(LongVector.fromArray(species, elements, i));
+        }
+
+        long min = mins.reduceLanes(VectorOperators.MIN);
+
+        for (; i < to; i++) {
+            min = Math.min(min, elements[i]);
+        }
+
+        return min;
+    }
+
+    @Override
+    public long maximum(long[] elements, int from, int to) {
+        LongVector maxs = LongVector.broadcast(species, Long.MIN_VALUE);
+        int i = from;
+
+        for (int upper = from + species.loopBound(to - from); i < upper; i += species.length()) {
+            maxs = maxs.max(LongVector.fromArray(species, elements, i));
+        }
+
+        long max = maxs.reduceLanes(VectorOperators.MAX);
+
+        for (; i < to; i++) {
+            max = Math.max(max, elements[i]);
+        }
+
+        return max;
+    }
+
+    @Override
+    public long frequency(long[] elements, long value, int from, int to) {
+        // one is added in every lane that matches, no branch involved
+        LongVector counts = LongVector.zero(species);
+        LongVector ones = LongVector.broadcast(species, 1L);
+        int i = from;
+
+        for (int upper = from + species.loopBound(to - from); i < upper; i += species.length()) {
+            LongVector block = LongVector.fromArray(species, elements, i);
+            counts = counts.add(ones, block.compare(VectorOperators.EQ, value));
+        }
+
+        long count = counts.reduceLanes(VectorOperators.ADD);
+
+        for (; i < to; i++) {
+            count = (elements[i] == value) ? count + 1 : count;
+        }
+
+        return count;
+    }
+
+    @Override
+    public void add(long[] a, int aStart, long scalar, long[] dst, int start, int n) {
+        int i = 0;
+
+        for (int upper = species.loopBound(n); i < upper; i += species.length()) {
+            LongVector.fromArray(species, a, aStart + i).add(scalar).intoArray(dst, start + i);
+        }
+
+        for (; i < n; i++) {
+            dst[start + i] = a[aStart + i] + scalar;
+        }
+    }
+
+    @Override
+    public void multiply(long[] a, int aStart, long scalar, long[] dst, int start, int n) {
+        int i = 0;
+
+        for (int upper = species.loopBound(n); i < upper; i += species.length()) {
+            LongVector.fromArray(species, a, aStart + i).mul(scalar).intoArray(dst, start + i);
+        }
+
+        for (; i < n; i++) {
+            dst[start + i] = a[aStart + i] * scalar;
+        }
+    }
+
+    @Override
+    public void add(long[] a, int aStart, long[] b, int bStart, long[] dst, int start, int n) {
+        int i = 0;
+
+        for (int upper = species.loopBound(n); i < upper; i += species.length()) {
+            LongVector.fromArray(species, a, aStart + i)
+                    .add(LongVector.fromArray(species, b, bStart + i))
+                    .intoArray(dst, start + i);
+        }
+
+        for (; i < n; i++) {
+            dst[start + i] = a[aStart + i] + b[bStart + i];
+        }
+    }
+
+    @Override
+    public void multiply(long[] a, int aStart, long[] b, int bStart, long[] dst, int start, int n) {
+        int i = 0;
+
+        for (int upper = species.loopBound(n); i < upper; i += species.length()) {
+            LongVector.fromArray(species, a, aStart + i)
+                    .mul(LongVector.fromArray(species, b, bStart + i))
+                    .intoArray(dst, start + i);
+        }
+
+        for (; i < n; i++) {
+            dst[start + i] = a[aStart + i] * b[bStart + i];
+        }
+    }
+}